@@ -0,0 +1,199 @@
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 编解码与反转热点函数的微基准, 报告 ops/s 与每次操作的分配字节数.
+ * 标记为 baseline 的条目是最初实现的副本, 用作优化版本的对照基线.
+ *
+ * 编译运行 (在仓库根目录):
+ *   javac -encoding UTF-8 -d out src/*.java src-udp/*.java src-bench/*.java
+ *   java -cp out Codecbench [名称过滤] [块大小]
+ * 同样的热点另有JMH版本 src-jmh/bench/Codecjmh.java, 由仓库根目录的 pom.xml 构建.
+ */
+public class Codecbench {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500_000_000L;
+    private static final int OPS_PER_CHECK = 64; // 每批操作后才读一次时钟
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink; // 消费每次操作的结果, 防止被JIT消除
+
+    interface Op {
+        long run();
+    }
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        Random rand = new Random(1);
+        byte[] block = new byte[size];
+        for (int i = 0; i < size; i++) {
+            block[i] = (byte) (' ' + rand.nextInt(95));
+        }
+        String blockStr = new String(block);
+        byte[] frame = new byte[6 + size];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 64 * 1024; i++) {
+            text.append((char) ('a' + rand.nextInt(26)));
+        }
+        String words = text.toString();
+        byte[] payload = new byte[80];
+        rand.nextBytes(payload);
+        byte[] packet = createPacketBaseline(3, 4000, 0, payload);
+        ByteBuffer tx = ByteBuffer.allocateDirect(Packetcodec.MAX_DATAGRAM);
+        UDPserver.Datagram datagram = new UDPserver.Datagram();
+        datagram.buf.put(packet).flip();
+        UDPserver.Reorder outOfOrder = new UDPserver.Reorder();
+        outOfOrder.segSize = payload.length;
+        for (int i = 0; i < 8; i++) { // 8个互不相邻的乱序段, 编码出MAX_SACK个区间
+            UDPserver.Datagram segment = new UDPserver.Datagram();
+            segment.buf.put(createPacketBaseline(3, 4000 + 80 * (2 * i + 1), 0, payload)).flip();
+            UDPserver.parseHeader(segment);
+            outOfOrder.put(4000 + 80 * (2 * i + 1), 4000, segment);
+        }
+
+        System.out.printf("%-34s %14s %10s %12s %14s%n", "基准", "ops/s", "±%", "B/op", "分配MB/s");
+
+        // handleClient: 最初的 String/StringBuilder 反转路径
+        run(filter, "reverse.stringbuilder.baseline", () -> {
+            String blockdataStr = new String(block);
+            String reversed = new StringBuilder(new String(block)).reverse().toString();
+            ByteBuffer answerBuf = ByteBuffer.allocate(2 + 4 + reversed.length());
+            answerBuf.putShort((short) 4);
+            answerBuf.putInt(reversed.length());
+            answerBuf.put(reversed.getBytes());
+            return answerBuf.array()[6] + blockdataStr.length();
+        });
+        // handleClient: 复用帧缓冲的原地反转
+        run(filter, "reverse.inplace", () -> {
+            System.arraycopy(block, 0, frame, 6, size);
+            Reversetcpserver.reverse(frame, 6, 6 + size);
+            Reversetcpserver.putShort(frame, 0, (short) 4);
+            Reversetcpserver.putInt(frame, 2, size);
+            return frame[6];
+        });
+        // 客户端: 每块新建 ByteBuffer 编码ReverseRequest
+        run(filter, "frame.encode.bytebuffer.baseline", () -> {
+            ByteBuffer bufout = ByteBuffer.allocate(2 + 4 + blockStr.length());
+            bufout.putShort((short) 3);
+            bufout.putInt(blockStr.length());
+            bufout.put(blockStr.getBytes());
+            return bufout.array()[6];
+        });
+        // 客户端: 数据直接读入帧缓冲, 只写头部
+        run(filter, "frame.encode.inplace", () -> {
+            System.arraycopy(block, 0, frame, 6, size);
+            Reversetcpclient.putRequestHeader(frame, false, size);
+            return frame[5];
+        });
+        // UDP: 最初每包新建 ByteBuffer/PacketHeader 的编解码
+        run(filter, "udp.createPacket.baseline", () -> createPacketBaseline(3, 4000, 0, payload).length);
+        run(filter, "udp.parseHeader.baseline", () -> parseHeaderBaseline(packet).seqNum);
+        // UDP: 两端实际使用的编解码路径, 写入复用的直接缓冲区, 经视图解码
+        run(filter, "udp.client.createPacket", () -> {
+            UDPclient.createPacket(tx, 4000, 0, payload);
+            return tx.limit();
+        });
+        run(filter, "udp.server.parseHeader", () -> UDPserver.parseHeader(datagram) ? datagram.connId : -1);
+        run(filter, "udp.server.createAck.sack", () -> {
+            UDPserver.createAck(tx, 4000, outOfOrder, true);
+            return tx.limit();
+        });
+        // 64KB文本, LMin=10, LMax=50
+        run(filter, "generateBlocks.64k", () -> {
+            List<String> blocks = Reversetcpclient.generateBlocks(words, 10, 50);
+            return blocks.size();
+        });
+        run(filter, "blockplan.64k", () -> {
+            Reversetcpclient.BlockPlan plan = new Reversetcpclient.BlockPlan(words.length(), 10, 50, 1);
+            return plan.count;
+        });
+
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static byte[] createPacketBaseline(int type, int seq, int ack, byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + data.length);
+        buffer.put((byte) type);
+        buffer.putInt(seq);
+        buffer.putInt(ack);
+        buffer.putShort((short) data.length);
+        buffer.put((byte) 0);
+        buffer.put(data);
+        return buffer.array();
+    }
+
+    private static class PacketHeader {
+        byte type;
+        int seqNum;
+        int ackNum;
+        short dataLength;
+        byte reserved;
+    }
+
+    private static PacketHeader parseHeaderBaseline(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        PacketHeader header = new PacketHeader();
+        header.type = buffer.get();
+        header.seqNum = buffer.getInt();
+        header.ackNum = buffer.getInt();
+        header.dataLength = buffer.getShort();
+        header.reserved = buffer.get();
+        return header;
+    }
+
+    private static void run(String filter, String name, Op op) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(op);
+        }
+        double[] rates = new double[MEASURE_ITERATIONS];
+        long ops = 0;
+        long allocated = 0;
+        long nanos = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long a0 = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long t0 = System.nanoTime();
+            long n = iteration(op);
+            long t = System.nanoTime() - t0;
+            allocated += THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - a0;
+            rates[i] = n * 1e9 / t;
+            ops += n;
+            nanos += t;
+        }
+        double mean = 0;
+        for (double r : rates) {
+            mean += r;
+        }
+        mean /= rates.length;
+        double variance = 0;
+        for (double r : rates) {
+            variance += (r - mean) * (r - mean);
+        }
+        double error = Math.sqrt(variance / rates.length) / mean * 100;
+        System.out.printf("%-34s %14.0f %9.1f%% %12.1f %14.1f%n", name, mean, error,
+                (double) allocated / ops, allocated / (nanos / 1e9) / (1 << 20));
+    }
+
+    private static long iteration(Op op) {
+        long n = 0;
+        long start = System.nanoTime();
+        do {
+            for (int i = 0; i < OPS_PER_CHECK; i++) {
+                sink += op.run();
+            }
+            n += OPS_PER_CHECK;
+        } while (System.nanoTime() - start < ITERATION_NANOS);
+        return n;
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在一组网络模型下测量UDP传输的有效吞吐和完成时间.
+ * 启动一个不模拟丢包的 UDPserver, 对每个模型启动一个 Impairproxy, 再让 UDPclient 经代理分别以GBN和SR传输,
+ * 最后解析客户端输出的JSON汇总, 打印对比表并逐行输出JSON便于保存和比较不同提交.
+ *
+ * 编译运行 (在仓库根目录):
+ *   javac -encoding UTF-8 -d out src/*.java src-udp/*.java src-bench/*.java
+ *   java -cp out Udpsweep [packets=N | file=路径] [modes=gbn,sr] [profiles=名称,...] [runs=N]
+ *                         [profile=名称:参数,参数...] [port=N] [timeout=秒] [ack=N] [ackdelay=毫秒]
+ * 自定义模型的参数即 Impairproxy 的参数, 用逗号代替空格, 例如 profile=mine:up.loss=0.02,delay=10
+ * ack/ackdelay 原样传给服务器, 用于比较确认策略
+ */
+public class Udpsweep {
+    private static final Pattern JSON_LINE = Pattern.compile("^\\{\"mode\".*\\}$");
+    private static final Pattern NUMBER = Pattern.compile("\"(\\w+)\":\"?([\\w.\\-]+)\"?");
+
+    // 内置网络模型: 名称 -> Impairproxy 参数
+    private static final Map<String, String> PROFILES = new LinkedHashMap<>();
+
+    static {
+        PROFILES.put("clean", "");
+        PROFILES.put("loss1", "loss=0.01");
+        PROFILES.put("loss5", "loss=0.05");
+        PROFILES.put("ackloss5", "down.loss=0.05");
+        PROFILES.put("wan", "delay=20 jitter=2");
+        PROFILES.put("lossywan", "delay=20 jitter=2 loss=0.01");
+        PROFILES.put("reorder", "delay=5 reorder=0.05");
+        PROFILES.put("dup", "dup=0.05");
+        PROFILES.put("narrow", "rate=10 queue=50");
+    }
+
+    private String javaBin;
+    private String classpath;
+    private int serverPort = 9700;
+    private long timeoutSeconds = 120;
+    private String serverOptions = "";
+
+    public static void main(String[] args) throws Exception {
+        String workload = "packets=2000";
+        String[] modes = {"gbn", "sr"};
+        List<String> names = new ArrayList<>(PROFILES.keySet());
+        int runs = 1;
+        Udpsweep sweep = new Udpsweep();
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "packets":
+                case "file": workload = arg; break;
+                case "modes": modes = kv[1].split(","); break;
+                case "profiles": names = List.of(kv[1].split(",")); break;
+                case "runs": runs = Integer.parseInt(kv[1]); break;
+                case "port": sweep.serverPort = Integer.parseInt(kv[1]); break;
+                case "timeout": sweep.timeoutSeconds = Long.parseLong(kv[1]); break;
+                case "ack":
+                case "ackdelay": sweep.serverOptions += " " + arg; break;
+                case "profile": {
+                    String[] def = kv[1].split(":", 2);
+                    PROFILES.put(def[0], def.length > 1 ? def[1].replace(',', ' ') : "");
+                    if (!names.contains(def[0])) {
+                        names = new ArrayList<>(names);
+                        names.add(def[0]);
+                    }
+                    break;
+                }
+                default: throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+        for (String name : names) {
+            if (!PROFILES.containsKey(name)) {
+                throw new IllegalArgumentException("未知的网络模型: " + name);
+            }
+        }
+        sweep.javaBin = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        sweep.classpath = System.getProperty("java.class.path");
+        sweep.run(workload, modes, names, runs);
+    }
+
+    public void run(String workload, String[] modes, List<String> names, int runs) throws Exception {
+        Path recv = null;
+        String serverArgs = serverPort + " loss=0 quiet" + serverOptions;
+        if (workload.startsWith("file=")) {
+            recv = Files.createTempDirectory("udpsweep");
+            serverArgs += " dir=" + recv;
+        }
+        Process server = launch("UDPserver", serverArgs);
+        List<String> results = new ArrayList<>();
+        try {
+            Thread.sleep(500);
+            System.out.printf("%-10s %-4s %4s %12s %10s %8s %8s %8s %8s%n",
+                    "模型", "模式", "轮次", "goodput KB/s", "耗时 s", "发出包", "收到ACK", "快重传", "超时");
+            int proxyPort = serverPort + 1;
+            for (String name : names) {
+                String profile = PROFILES.get(name);
+                Process proxy = launch("Impairproxy",
+                        proxyPort + " 127.0.0.1 " + serverPort + " seed=1 quiet " + profile);
+                try {
+                    Thread.sleep(300);
+                    for (String mode : modes) {
+                        for (int r = 1; r <= runs; r++) {
+                            results.add(runClient(name, profile, mode, r, proxyPort, workload));
+                        }
+                    }
+                } finally {
+                    proxy.destroy();
+                    proxy.waitFor();
+                }
+                proxyPort++; // 每个模型换一个端口, 避免上一个代理的残留包
+            }
+        } finally {
+            server.destroy();
+            server.waitFor();
+            if (recv != null) {
+                try (var files = Files.list(recv)) {
+                    for (Path p : (Iterable<Path>) files::iterator) {
+                        Files.delete(p);
+                    }
+                }
+                Files.delete(recv);
+            }
+        }
+        System.out.println();
+        results.forEach(System.out::println);
+    }
+
+    // 运行一次客户端, 返回一行JSON结果; 客户端失败或超时时 ok 为 false
+    private String runClient(String name, String profile, String mode, int run, int proxyPort, String workload)
+            throws Exception {
+        long start = System.nanoTime();
+        Process client = launch("UDPclient",
+                "127.0.0.1 " + proxyPort + (mode.equals("sr") ? " sr " : " ") + workload + " quiet");
+        // 单独的线程读取客户端输出, 超时时可以直接结束客户端进程
+        String[] found = new String[1];
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (JSON_LINE.matcher(line).matches()) {
+                        found[0] = line;
+                    }
+                }
+            } catch (IOException e) {
+                // 进程被强制结束
+            }
+        }, "client-output");
+        reader.start();
+        boolean exited = client.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+        if (!exited) {
+            client.destroyForcibly();
+        }
+        reader.join();
+        String summary = found[0];
+        double wall = (System.nanoTime() - start) / 1e9;
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (summary != null) {
+            Matcher m = NUMBER.matcher(summary);
+            while (m.find()) {
+                fields.put(m.group(1), m.group(2));
+            }
+        }
+        boolean ok = exited && summary != null;
+        if (ok) {
+            System.out.printf(Locale.ROOT, "%-10s %-4s %4d %12.1f %10.3f %8s %8s %8s %8s%n", name, mode, run,
+                    Double.parseDouble(fields.get("goodputBps")) / 1024, Double.parseDouble(fields.get("seconds")),
+                    fields.get("dataSent"), fields.get("acks"), fields.get("fastRetransmits"), fields.get("timeouts"));
+        } else {
+            System.out.printf("%-10s %-4s %4d %12s%n", name, mode, run, exited ? "失败" : "超时");
+        }
+        return String.format(Locale.ROOT, "{\"profile\":\"%s\",\"impair\":\"%s\",\"run\":%d,\"ok\":%b,"
+                        + "\"wallSeconds\":%.3f,\"client\":%s}",
+                name, profile, run, ok, wall, summary != null ? summary : "null");
+    }
+
+    // 以单独的JVM启动仓库中的一个程序, 把参数行写入其标准输入
+    private Process launch(String mainClass, String input) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(javaBin, "-cp", classpath, mainClass);
+        pb.redirectErrorStream(true);
+        if (!mainClass.equals("UDPclient")) {
+            pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        }
+        Process p = pb.start();
+        try (OutputStream stdin = p.getOutputStream()) {
+            stdin.write((input.trim() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return p;
+    }
+}
@@ -0,0 +1,254 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Codecbench 中热点函数的JMH版本, 直接调用两端实际使用的编解码、反转与分块方法; 结果交给Blackhole消费.
+ * 被测类都在默认包中, 而JMH要求基准类有包名, 所以经 privateLookupIn 取得包私有方法的句柄;
+ * 句柄保存在 static final 字段中, JIT 会把调用内联成普通的静态调用.
+ *
+ * 运行 (在仓库根目录):
+ *   mvn -B package
+ *   java -jar target/benchmarks.jar bench.Codecjmh -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Codecjmh {
+    private static final MethodHandle REVERSE;
+    private static final MethodHandle PUT_SHORT;
+    private static final MethodHandle PUT_INT;
+    private static final MethodHandle PUT_REQUEST_HEADER;
+    private static final MethodHandle GENERATE_BLOCKS;
+    private static final MethodHandle NEW_BLOCK_PLAN;
+    private static final MethodHandle BLOCK_PLAN_COUNT;
+    private static final MethodHandle CREATE_PACKET;
+    private static final MethodHandle CREATE_ACK;
+    private static final MethodHandle NEW_DATAGRAM;
+    private static final MethodHandle NEW_REORDER;
+    private static final MethodHandle REORDER_SEG_SIZE;
+    private static final MethodHandle REORDER_PUT;
+    private static final MethodHandle DATAGRAM_BUF;
+    private static final MethodHandle PARSE_HEADER;
+    private static final MethodHandle CONN_ID;
+    private static final MethodHandle MAX_DATAGRAM;
+
+    static {
+        try {
+            MethodHandles.Lookup server = lookup("Reversetcpserver");
+            REVERSE = server.findStatic(server.lookupClass(), "reverse",
+                    MethodType.methodType(void.class, byte[].class, int.class, int.class));
+            PUT_SHORT = server.findStatic(server.lookupClass(), "putShort",
+                    MethodType.methodType(void.class, byte[].class, int.class, short.class));
+            PUT_INT = server.findStatic(server.lookupClass(), "putInt",
+                    MethodType.methodType(void.class, byte[].class, int.class, int.class));
+
+            MethodHandles.Lookup tcp = lookup("Reversetcpclient");
+            PUT_REQUEST_HEADER = tcp.findStatic(tcp.lookupClass(), "putRequestHeader",
+                    MethodType.methodType(int.class, byte[].class, boolean.class, int.class));
+            GENERATE_BLOCKS = tcp.findStatic(tcp.lookupClass(), "generateBlocks",
+                    MethodType.methodType(List.class, String.class, int.class, int.class));
+            MethodHandles.Lookup plan = lookup("Reversetcpclient$BlockPlan");
+            NEW_BLOCK_PLAN = plan.findConstructor(plan.lookupClass(),
+                    MethodType.methodType(void.class, long.class, int.class, int.class, long.class))
+                    .asType(MethodType.methodType(Object.class, long.class, int.class, int.class, long.class));
+            BLOCK_PLAN_COUNT = plan.findGetter(plan.lookupClass(), "count", int.class)
+                    .asType(MethodType.methodType(int.class, Object.class));
+
+            MethodHandles.Lookup client = lookup("UDPclient");
+            CREATE_PACKET = client.findStatic(client.lookupClass(), "createPacket",
+                    MethodType.methodType(void.class, ByteBuffer.class, int.class, int.class, byte[].class));
+
+            MethodHandles.Lookup udp = lookup("UDPserver");
+            MethodHandles.Lookup datagram = lookup("UDPserver$Datagram");
+            Class<?> d = datagram.lookupClass();
+            MethodHandles.Lookup reorder = lookup("UDPserver$Reorder");
+            Class<?> ring = reorder.lookupClass();
+            CREATE_ACK = udp.findStatic(udp.lookupClass(), "createAck",
+                    MethodType.methodType(void.class, ByteBuffer.class, long.class, ring, boolean.class))
+                    .asType(MethodType.methodType(void.class, ByteBuffer.class, long.class, Object.class, boolean.class));
+            NEW_REORDER = reorder.findConstructor(ring, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            REORDER_SEG_SIZE = reorder.findSetter(ring, "segSize", int.class)
+                    .asType(MethodType.methodType(void.class, Object.class, int.class));
+            REORDER_PUT = reorder.findVirtual(ring, "put", MethodType.methodType(boolean.class, long.class, long.class, d))
+                    .asType(MethodType.methodType(boolean.class, Object.class, long.class, long.class, Object.class));
+            NEW_DATAGRAM = datagram.findConstructor(d, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            DATAGRAM_BUF = datagram.findGetter(d, "buf", ByteBuffer.class)
+                    .asType(MethodType.methodType(ByteBuffer.class, Object.class));
+            CONN_ID = datagram.findGetter(d, "connId", int.class)
+                    .asType(MethodType.methodType(int.class, Object.class));
+            PARSE_HEADER = udp.findStatic(udp.lookupClass(), "parseHeader", MethodType.methodType(boolean.class, d))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+
+            MethodHandles.Lookup codec = lookup("Packetcodec");
+            MAX_DATAGRAM = codec.findStaticGetter(codec.lookupClass(), "MAX_DATAGRAM", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(String name) throws ReflectiveOperationException {
+        return MethodHandles.privateLookupIn(Class.forName(name), MethodHandles.lookup());
+    }
+
+    byte[] payload;
+    ByteBuffer tx;
+    Object datagram;
+    Object outOfOrder;
+
+    @Setup
+    public void setup() throws Throwable {
+        payload = new byte[80];
+        new Random(1).nextBytes(payload);
+        tx = ByteBuffer.allocateDirect((int) MAX_DATAGRAM.invokeExact());
+        CREATE_PACKET.invokeExact(tx, 4000, 0, payload);
+        datagram = NEW_DATAGRAM.invokeExact();
+        ByteBuffer buf = (ByteBuffer) DATAGRAM_BUF.invokeExact(datagram);
+        buf.clear();
+        buf.put(tx).flip();
+        outOfOrder = NEW_REORDER.invokeExact();
+        REORDER_SEG_SIZE.invokeExact(outOfOrder, payload.length);
+        for (int i = 0; i < 8; i++) { // 8个互不相邻的乱序段, 编码出MAX_SACK个区间
+            int seq = 4000 + payload.length * (2 * i + 1);
+            Object segment = NEW_DATAGRAM.invokeExact();
+            CREATE_PACKET.invokeExact(tx, seq, 0, payload);
+            ((ByteBuffer) DATAGRAM_BUF.invokeExact(segment)).clear().put(tx).flip();
+            boolean parsed = (boolean) PARSE_HEADER.invokeExact(segment);
+            boolean put = (boolean) REORDER_PUT.invokeExact(outOfOrder, (long) seq, 4000L, segment);
+            if (!parsed || !put) {
+                throw new IllegalStateException("乱序段 " + seq + " 未能缓存");
+            }
+        }
+    }
+
+    // TCP帧的反转与编码基准按块大小参数化, UDP基准的包大小固定
+    @State(Scope.Thread)
+    public static class Frame {
+        @Param({"64", "1024", "65536"})
+        int size;
+
+        byte[] block;
+        String blockStr;
+        byte[] frame;
+
+        @Setup
+        public void setup() {
+            Random rand = new Random(1);
+            block = new byte[size];
+            for (int i = 0; i < size; i++) {
+                block[i] = (byte) (' ' + rand.nextInt(95));
+            }
+            blockStr = new String(block);
+            frame = new byte[6 + size];
+        }
+    }
+
+    // 分块基准的输入: 64KB小写字母文本, LMin=10, LMax=50
+    @State(Scope.Benchmark)
+    public static class Text {
+        String words;
+
+        @Setup
+        public void setup() {
+            Random rand = new Random(1);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 64 * 1024; i++) {
+                text.append((char) ('a' + rand.nextInt(26)));
+            }
+            words = text.toString();
+        }
+    }
+
+    // handleClient 最初的 String/StringBuilder 反转路径
+    @Benchmark
+    public void reverseStringBuilderBaseline(Frame f, Blackhole bh) {
+        String reversed = new StringBuilder(new String(f.block)).reverse().toString();
+        ByteBuffer answerBuf = ByteBuffer.allocate(2 + 4 + reversed.length());
+        answerBuf.putShort((short) 4);
+        answerBuf.putInt(reversed.length());
+        answerBuf.put(reversed.getBytes());
+        bh.consume(answerBuf);
+    }
+
+    // handleClient 复用帧缓冲的原地反转
+    @Benchmark
+    public void reverseInplace(Frame f, Blackhole bh) throws Throwable {
+        System.arraycopy(f.block, 0, f.frame, 6, f.size);
+        REVERSE.invokeExact(f.frame, 6, 6 + f.size);
+        PUT_SHORT.invokeExact(f.frame, 0, (short) 4);
+        PUT_INT.invokeExact(f.frame, 2, f.size);
+        bh.consume(f.frame);
+    }
+
+    // 客户端最初每块新建 ByteBuffer 编码ReverseRequest
+    @Benchmark
+    public void frameEncodeByteBufferBaseline(Frame f, Blackhole bh) {
+        ByteBuffer bufout = ByteBuffer.allocate(2 + 4 + f.blockStr.length());
+        bufout.putShort((short) 3);
+        bufout.putInt(f.blockStr.length());
+        bufout.put(f.blockStr.getBytes());
+        bh.consume(bufout);
+    }
+
+    // 客户端数据直接读入复用的帧缓冲, 只写头部
+    @Benchmark
+    public void frameEncodeInplace(Frame f, Blackhole bh) throws Throwable {
+        System.arraycopy(f.block, 0, f.frame, 6, f.size);
+        int hdr = (int) PUT_REQUEST_HEADER.invokeExact(f.frame, false, f.size);
+        bh.consume(hdr);
+        bh.consume(f.frame);
+    }
+
+    @Benchmark
+    public void generateBlocks(Text t, Blackhole bh) throws Throwable {
+        bh.consume((List<?>) GENERATE_BLOCKS.invokeExact(t.words, 10, 50));
+    }
+
+    @Benchmark
+    public void blockPlan(Text t, Blackhole bh) throws Throwable {
+        Object plan = NEW_BLOCK_PLAN.invokeExact((long) t.words.length(), 10, 50, 1L);
+        bh.consume((int) BLOCK_PLAN_COUNT.invokeExact(plan));
+    }
+
+    @Benchmark
+    public void udpClientCreatePacket(Blackhole bh) throws Throwable {
+        CREATE_PACKET.invokeExact(tx, 4000, 0, payload);
+        bh.consume(tx);
+    }
+
+    @Benchmark
+    public void udpServerParseHeader(Blackhole bh) throws Throwable {
+        bh.consume((boolean) PARSE_HEADER.invokeExact(datagram));
+        bh.consume((int) CONN_ID.invokeExact(datagram));
+    }
+
+    @Benchmark
+    public void udpServerCreateAckSack(Blackhole bh) throws Throwable {
+        CREATE_ACK.invokeExact(tx, 4000L, outOfOrder, true);
+        bh.consume(tx);
+    }
+}
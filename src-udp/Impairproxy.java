@@ -0,0 +1,355 @@
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * 放在 UDPclient 与 UDPserver 之间的本地网络损伤代理, 两个方向各自模拟丢包、时延、抖动、乱序、重复和带宽限制.
+ * 客户端把代理当作服务器; 代理为每个客户端地址开一个连到服务器的上游套接字,
+ * 服务器因此仍按客户端区分会话. 上行 (up) 为客户端到服务器, 下行 (down) 为服务器到客户端.
+ * 单线程事件循环: 收到的包按计划的投递时间进入优先队列, 选择器在最早的投递时间醒来.
+ */
+public class Impairproxy {
+    private static final long FLOW_IDLE_MS = 60_000; // 客户端空闲超过此时间即关闭其上游套接字
+    private static final long REPORT_MS = 5_000;     // 统计输出间隔
+
+    // 单个方向的损伤参数
+    static class Profile {
+        double loss;      // 丢包率
+        double delayMs;   // 固定单向时延
+        double jitterMs;  // 时延在 ±jitter 内均匀抖动, 但不会让包越过前一个包; 乱序只由reorder产生
+        double reorder;   // 被选中的包额外延迟 max(时延, 5ms), 让后面的包越过它
+        double dup;       // 重复投递的概率
+        double rateMbps;  // 瓶颈带宽, 0表示不限
+        int queue = 100;  // 限速时瓶颈队列的容量(包), 队满即尾部丢弃
+
+        @Override
+        public String toString() {
+            return String.format("loss=%s delay=%sms jitter=%sms reorder=%s dup=%s rate=%s queue=%d",
+                    loss, delayMs, jitterMs, reorder, dup, rateMbps > 0 ? rateMbps + "Mbps" : "不限", queue);
+        }
+    }
+
+    // 一个方向的运行状态
+    private static class Direction {
+        final String name;
+        final Profile profile = new Profile();
+        long nextFree;                                          // 瓶颈链路空闲的时刻(纳秒)
+        final ArrayDeque<Long> departures = new ArrayDeque<>(); // 排队中的包离开瓶颈的时刻, 用于判断队满
+        long lastDue;                                           // 上一个按序包的投递时刻, 抖动不早于它
+        long forwarded;
+        long lost;
+        long queueDropped;
+        long reordered;
+        long duplicated;
+
+        Direction(String name) {
+            this.name = name;
+        }
+    }
+
+    // 一个客户端及其上游套接字
+    private static class Flow {
+        final SocketAddress client;
+        final DatagramChannel upstream;
+        long lastActive;
+
+        Flow(SocketAddress client, DatagramChannel upstream) {
+            this.client = client;
+            this.upstream = upstream;
+        }
+    }
+
+    // 等待投递的包
+    private static class Pending {
+        final long due;     // 投递时刻(纳秒)
+        final long order;   // 同一时刻按到达顺序投递
+        final ByteBuffer buf;
+        final Flow flow;
+        final boolean up;
+
+        Pending(long due, long order, ByteBuffer buf, Flow flow, boolean up) {
+            this.due = due;
+            this.order = order;
+            this.buf = buf;
+            this.flow = flow;
+            this.up = up;
+        }
+    }
+
+    private final int listenPort;
+    private final InetSocketAddress server;
+    private final Direction up = new Direction("上行");
+    private final Direction down = new Direction("下行");
+    private final Random random;
+    private boolean verbose = true;
+    private final Map<SocketAddress, Flow> flows = new HashMap<>();
+    private final PriorityQueue<Pending> pending = new PriorityQueue<>(
+            (a, b) -> a.due != b.due ? Long.compare(a.due, b.due) : Long.compare(a.order, b.order));
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>(); // 复用的包缓冲区
+    private long order;
+    private long reported;        // 上次输出统计时的转发总数, 没有新流量时不再重复输出
+    private DatagramChannel front;
+    private Selector selector;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("输入 监听端口 服务器IP 服务器端口, 空格隔开; 可选参数同时作用于两个方向, 加 up./down. 前缀只作用于一个方向:");
+        System.out.println("loss=R delay=毫秒 jitter=毫秒 reorder=R dup=R rate=Mbps queue=包数 seed=N quiet");
+        Scanner scanner = new Scanner(System.in);
+        String[] ary = scanner.nextLine().trim().split("( +)");
+        boolean verbose = true;
+        Impairproxy proxy = new Impairproxy(Integer.parseInt(ary[0]),
+                new InetSocketAddress(ary[1], Integer.parseInt(ary[2])), System.nanoTime());
+        for (int i = 3; i < ary.length; i++) {
+            if (ary[i].equalsIgnoreCase("quiet")) {
+                verbose = false;
+            } else if (ary[i].startsWith("seed=")) {
+                proxy.random.setSeed(Long.parseLong(ary[i].substring("seed=".length())));
+            } else {
+                proxy.configure(ary[i]);
+            }
+        }
+        proxy.verbose = verbose;
+        proxy.start();
+    }
+
+    public Impairproxy(int listenPort, InetSocketAddress server, long seed) {
+        this.listenPort = listenPort;
+        this.server = server;
+        this.random = new Random(seed);
+    }
+
+    // 解析一个 [up.|down.]key=value 参数
+    public void configure(String option) {
+        String[] kv = option.split("=", 2);
+        if (kv.length != 2) {
+            throw new IllegalArgumentException("参数格式应为 key=value: " + option);
+        }
+        String key = kv[0];
+        Direction[] targets = {up, down};
+        if (key.startsWith("up.")) {
+            targets = new Direction[] {up};
+            key = key.substring("up.".length());
+        } else if (key.startsWith("down.")) {
+            targets = new Direction[] {down};
+            key = key.substring("down.".length());
+        }
+        double value = Double.parseDouble(kv[1]);
+        for (Direction d : targets) {
+            Profile p = d.profile;
+            switch (key) {
+                case "loss": p.loss = value; break;
+                case "delay": p.delayMs = value; break;
+                case "jitter": p.jitterMs = value; break;
+                case "reorder": p.reorder = value; break;
+                case "dup": p.dup = value; break;
+                case "rate": p.rateMbps = value; break;
+                case "queue": p.queue = (int) value; break;
+                default: throw new IllegalArgumentException("未知参数: " + option);
+            }
+        }
+    }
+
+    public void start() throws Exception {
+        try (DatagramChannel ch = DatagramChannel.open();
+             Selector sel = Selector.open()) {
+            front = ch;
+            selector = sel;
+            ch.bind(new InetSocketAddress(listenPort));
+            ch.configureBlocking(false);
+            ch.register(sel, SelectionKey.OP_READ);
+            System.out.println("[启动] 代理监听端口 " + listenPort + ", 转发至 " + server);
+            System.out.println("[上行] " + up.profile);
+            System.out.println("[下行] " + down.profile);
+
+            long lastReport = System.currentTimeMillis();
+            while (true) {
+                Pending head = pending.peek();
+                long waitNanos = head == null ? REPORT_MS * 1_000_000L : head.due - System.nanoTime();
+                if (waitNanos < 1_000_000L) {
+                    sel.selectNow();
+                } else {
+                    sel.select(waitNanos / 1_000_000L);
+                }
+                Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.attachment() == null) {
+                        receiveFromClients();
+                    } else {
+                        receiveFromServer((Flow) key.attachment());
+                    }
+                }
+                deliverDue();
+
+                long now = System.currentTimeMillis();
+                if (now - lastReport >= REPORT_MS) {
+                    lastReport = now;
+                    sweepIdleFlows(now);
+                    if (verbose) {
+                        report();
+                    }
+                }
+            }
+        }
+    }
+
+    // 客户端发来的包: 查找或建立该客户端的上游套接字, 按上行参数调度
+    private void receiveFromClients() throws Exception {
+        while (true) {
+            ByteBuffer buf = acquire();
+            SocketAddress from = front.receive(buf);
+            if (from == null) {
+                free.push(buf);
+                return;
+            }
+            Flow flow = flows.get(from);
+            if (flow == null) {
+                DatagramChannel upstream = DatagramChannel.open();
+                upstream.connect(server);
+                upstream.configureBlocking(false);
+                flow = new Flow(from, upstream);
+                upstream.register(selector, SelectionKey.OP_READ, flow);
+                flows.put(from, flow);
+                if (verbose) {
+                    System.out.println("[连接] 新客户端 " + from + " 经 " + upstream.getLocalAddress());
+                }
+            }
+            flow.lastActive = System.currentTimeMillis();
+            buf.flip();
+            impair(up, buf, flow, true);
+        }
+    }
+
+    // 服务器回复的包: 按下行参数调度, 到期后从监听端口发回客户端
+    private void receiveFromServer(Flow flow) throws Exception {
+        while (true) {
+            ByteBuffer buf = acquire();
+            int n;
+            try {
+                n = flow.upstream.read(buf);
+            } catch (PortUnreachableException e) {
+                n = 0; // 服务器端口未打开
+            }
+            if (n <= 0) {
+                free.push(buf);
+                return;
+            }
+            buf.flip();
+            impair(down, buf, flow, false);
+        }
+    }
+
+    // 依次施加丢包、瓶颈排队、时延/抖动、乱序和重复, 决定包是否以及何时投递
+    private void impair(Direction d, ByteBuffer buf, Flow flow, boolean toServer) {
+        Profile p = d.profile;
+        long now = System.nanoTime();
+        if (p.loss > 0 && random.nextDouble() < p.loss) {
+            d.lost++;
+            free.push(buf);
+            return;
+        }
+
+        long departure = now;
+        if (p.rateMbps > 0) {
+            while (!d.departures.isEmpty() && d.departures.peekFirst() <= now) {
+                d.departures.pollFirst();
+            }
+            if (d.departures.size() >= p.queue) {
+                d.queueDropped++;
+                free.push(buf);
+                return;
+            }
+            // 包长含IP/UDP头, 按瓶颈带宽串行发送
+            long serialize = (long) ((buf.remaining() + 28) * 8 * 1000 / p.rateMbps);
+            departure = Math.max(now, d.nextFree) + serialize;
+            d.nextFree = departure;
+            d.departures.addLast(departure);
+        }
+
+        double delayMs = p.delayMs;
+        if (p.jitterMs > 0) {
+            delayMs = Math.max(0, delayMs + (random.nextDouble() * 2 - 1) * p.jitterMs);
+        }
+        long due = departure + (long) (delayMs * 1_000_000);
+        if (p.reorder > 0 && random.nextDouble() < p.reorder) {
+            due += (long) (Math.max(p.delayMs, 5) * 1_000_000);
+            d.reordered++;
+        } else {
+            due = Math.max(due, d.lastDue);
+            d.lastDue = due;
+        }
+        pending.add(new Pending(due, order++, buf, flow, toServer));
+
+        if (p.dup > 0 && random.nextDouble() < p.dup) {
+            ByteBuffer copy = acquire();
+            copy.put(buf.duplicate()).flip();
+            pending.add(new Pending(due, order++, copy, flow, toServer));
+            d.duplicated++;
+        }
+    }
+
+    // 发出所有到期的包
+    private void deliverDue() throws Exception {
+        long now = System.nanoTime();
+        while (!pending.isEmpty() && pending.peek().due <= now) {
+            Pending p = pending.poll();
+            try {
+                if (p.up) {
+                    if (p.flow.upstream.isOpen()) {
+                        p.flow.upstream.write(p.buf);
+                        up.forwarded++;
+                    }
+                } else {
+                    front.send(p.buf, p.flow.client);
+                    down.forwarded++;
+                }
+            } catch (PortUnreachableException e) {
+                // 服务器端口未打开, 与丢包同样处理
+            }
+            free.push(p.buf);
+        }
+    }
+
+    private void sweepIdleFlows(long now) throws Exception {
+        Iterator<Flow> it = flows.values().iterator();
+        while (it.hasNext()) {
+            Flow flow = it.next();
+            if (now - flow.lastActive > FLOW_IDLE_MS) {
+                flow.upstream.close();
+                it.remove();
+            }
+        }
+    }
+
+    private void report() {
+        if (up.forwarded + down.forwarded == reported) {
+            return;
+        }
+        reported = up.forwarded + down.forwarded;
+        for (Direction d : new Direction[] {up, down}) {
+            System.out.printf("[统计] %s: 转发 %d, 丢弃 %d, 队满丢弃 %d, 乱序 %d, 重复 %d%n",
+                    d.name, d.forwarded, d.lost, d.queueDropped, d.reordered, d.duplicated);
+        }
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buf = free.poll();
+        if (buf == null) {
+            buf = ByteBuffer.allocate(Packetcodec.MAX_DATAGRAM);
+        }
+        buf.clear();
+        return buf;
+    }
+}
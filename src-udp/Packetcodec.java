@@ -0,0 +1,93 @@
+import java.nio.ByteBuffer;
+
+/**
+ * UDPclient 与 UDPserver 共用的协议编解码.
+ * 头部12字节: 类型(1) 序列号(4) 确认号(4) 数据长度(2, 无符号) 保留(1).
+ * 编码直接写入调用方复用的缓冲区; 解码通过可复用的视图按绝对位置读取, 每个包都不产生新对象.
+ */
+public final class Packetcodec {
+    static final int HEADER_SIZE = 12;
+    static final int MAX_DATAGRAM = 9216; // 收发缓冲区大小, 可容纳9000字节巨型帧
+
+    static final int SYN = 0;
+    static final int SYN_ACK = 1;
+    static final int ACK = 2;
+    static final int DATA = 3;
+    static final int FIN = 4;
+
+    static final int FLAG_SACK = 1;   // SYN/SYN-ACK保留字节中的选择确认标志
+    static final int MAX_SACK = 4;    // 每个ACK最多携带的SACK区间数, 每个区间8字节
+
+    private ByteBuffer buf;
+
+    // 清空buf并写入头部, 位置停在载荷起点; 调用方写完载荷后调用finish
+    static void begin(ByteBuffer buf, int type, int seq, int ack, int reserved) {
+        buf.clear();
+        buf.put((byte) type);      // 1字节类型
+        buf.putInt(seq);           // 4字节序列号
+        buf.putInt(ack);           // 4字节确认号
+        buf.putShort((short) 0);   // 2字节数据长度, finish时回填
+        buf.put((byte) reserved);  // 1字节保留: SYN/SYN-ACK中为选项标志, ACK中为接收窗口(包)
+    }
+
+    // 回填数据长度并flip, 之后buf可直接发送
+    static void finish(ByteBuffer buf) {
+        buf.putShort(9, (short) (buf.position() - HEADER_SIZE));
+        buf.flip();
+    }
+
+    // 编码不带载荷的控制包
+    static void encode(ByteBuffer buf, int type, int seq, int ack, int reserved) {
+        begin(buf, type, seq, ack, reserved);
+        finish(buf);
+    }
+
+    // 以期望偏移为参照, 把头部中的32位序列号还原为64位字节偏移; 要求两者相差不足2GB
+    static long unwrap(int wire, long reference) {
+        return reference + (wire - (int) reference);
+    }
+
+    // 把视图指向buf中 [0, limit) 的数据报
+    Packetcodec wrap(ByteBuffer buf) {
+        this.buf = buf;
+        return this;
+    }
+
+    // 头部完整且声明的数据长度不超过实际收到的字节数
+    boolean valid() {
+        return buf.limit() >= HEADER_SIZE && length() <= buf.limit() - HEADER_SIZE;
+    }
+
+    int type() {
+        return buf.get(0);
+    }
+
+    int seq() {
+        return buf.getInt(1);
+    }
+
+    int ack() {
+        return buf.getInt(5);
+    }
+
+    int length() {
+        return buf.getShort(9) & 0xFFFF;
+    }
+
+    int reserved() {
+        return buf.get(11) & 0xFF;
+    }
+
+    // 第i个SACK区间的起点/终点(32位)
+    int sackStart(int i) {
+        return buf.getInt(HEADER_SIZE + i * 8);
+    }
+
+    int sackEnd(int i) {
+        return buf.getInt(HEADER_SIZE + i * 8 + 4);
+    }
+
+    int sackCount() {
+        return length() / 8;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * 哈希时间轮: 到期tick对槽数取模决定槽位, 每槽一条双向链表, 调度和取消都是O(1).
+ * 超过一圈的定时器留在槽中, 等指针转到它的到期tick时才触发.
+ * 定时器对象由调用方持有并反复调度, 时间轮本身不分配内存. 非线程安全, 只在事件循环线程中使用.
+ */
+public class Timerwheel {
+    public interface Handler {
+        void expired(Timer timer) throws Exception;
+    }
+
+    public static class Timer {
+        final int id;       // 调用方的标识, 例如在途包的槽位
+        long deadline;      // 到期tick
+        int slot = -1;      // 所在槽位, -1表示未调度
+        Timer prev;
+        Timer next;
+
+        public Timer(int id) {
+            this.id = id;
+        }
+
+        public boolean scheduled() {
+            return slot >= 0;
+        }
+    }
+
+    private final Timer[] heads;
+    private final long[] occupied; // 每槽一位, 槽内链表非空时置位, 查找下一个非空槽时按64槽一字跳过空槽
+    private final int mask;
+    private final long tickMillis;
+    private long cursor;    // 下一个待处理的tick
+    private int size;
+
+    // 单调时钟的毫秒数; 时间轮的调用方都用它计时, 不受系统时间被调整的影响
+    public static long nowMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    // slots须为2的幂; 时间轮一圈 = slots * tickMillis, 取得比常见超时长可避免多圈
+    public Timerwheel(int slots, long tickMillis, long nowMillis) {
+        if (Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("槽数须为2的幂: " + slots);
+        }
+        this.heads = new Timer[slots];
+        this.occupied = new long[(slots + 63) >>> 6];
+        this.mask = slots - 1;
+        this.tickMillis = tickMillis;
+        this.cursor = nowMillis / tickMillis;
+    }
+
+    // 在delayMillis后触发; 已调度的定时器先取消再重新调度
+    public void schedule(Timer t, long delayMillis, long nowMillis) {
+        cancel(t);
+        long tick = Math.max(cursor, (nowMillis + delayMillis + tickMillis - 1) / tickMillis);
+        int s = (int) (tick & mask);
+        t.deadline = tick;
+        t.slot = s;
+        t.prev = null;
+        t.next = heads[s];
+        if (heads[s] != null) {
+            heads[s].prev = t;
+        }
+        heads[s] = t;
+        occupied[s >>> 6] |= 1L << s;
+        size++;
+    }
+
+    public void cancel(Timer t) {
+        if (t.slot < 0) {
+            return;
+        }
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            heads[t.slot] = t.next;
+            if (t.next == null) {
+                occupied[t.slot >>> 6] &= ~(1L << t.slot);
+            }
+        }
+        if (t.next != null) {
+            t.next.prev = t.prev;
+        }
+        t.prev = null;
+        t.next = null;
+        t.slot = -1;
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 处理到nowMillis为止的所有tick, 依次回调到期的定时器; 回调中可以重新调度或取消任何定时器
+    public void advance(long nowMillis, Handler handler) throws Exception {
+        long target = nowMillis / tickMillis;
+        while (cursor <= target) {
+            int skip = size == 0 ? -1 : nextOccupied((int) (cursor & mask));
+            if (skip < 0 || cursor + skip > target) {
+                cursor = target + 1;
+                return;
+            }
+            cursor += skip;
+            int s = (int) (cursor & mask);
+            Timer t = heads[s];
+            while (t != null) {
+                if (t.deadline <= cursor) {
+                    cancel(t);
+                    handler.expired(t);
+                    t = heads[s]; // 回调可能改动了本槽的链表, 从头再扫
+                } else {
+                    t = t.next;
+                }
+            }
+            cursor++;
+        }
+    }
+
+    // 距最早的定时器到期还有多少毫秒, 没有定时器时返回-1; 从当前tick起只查非空槽, 最多一圈
+    public long delayToNext(long nowMillis) {
+        if (size == 0) {
+            return -1;
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i <= mask; i++) {
+            int skip = nextOccupied((int) ((cursor + i) & mask));
+            if (skip < 0 || (i += skip) > mask) {
+                break;
+            }
+            for (Timer t = heads[(int) ((cursor + i) & mask)]; t != null; t = t.next) {
+                best = Math.min(best, t.deadline);
+            }
+            if (best <= cursor + i) {
+                break;
+            }
+        }
+        return Math.max(0, best * tickMillis - nowMillis);
+    }
+
+    // 从槽start起按环形顺序找第一个非空槽, 返回它与start相隔的槽数; 全部为空时返回-1
+    private int nextOccupied(int start) {
+        int w = start >>> 6;
+        long bits = occupied[w] & (-1L << start);
+        for (int n = 0; n <= occupied.length; n++) {
+            if (bits != 0) {
+                return ((w << 6) + Long.numberOfTrailingZeros(bits) - start) & mask;
+            }
+            w = w + 1 == occupied.length ? 0 : w + 1;
+            bits = occupied[w];
+        }
+        return -1;
+    }
+}
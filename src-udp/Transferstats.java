@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * UDPclient 的流式传输统计, 内存占用与传输长度无关.
+ * RTT样本(微秒)记入对数-线性直方图, 每个2的幂区间均分为32个桶, 分位数相对误差约3%;
+ * 分桶规则与 src/Latencyhistogram 相同, 此处保留一份, src-udp 不依赖 src 即可单独编译.
+ * 均值和标准差按Welford算法增量计算. 计数器在发送和确认路径上累加.
+ * 设置了导出文件时, 每个采样周期追加一行: 累计与区间内的吞吐、重传, 以及当时的cwnd/RTO和区间RTT分位数.
+ * 只在客户端的事件循环线程中使用, 不加锁.
+ */
+public class Transferstats {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR = SUB_COUNT << 1;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS) * SUB_COUNT;
+
+    // 单线程直方图
+    static final class Histogram {
+        private final long[] counts = new long[BUCKETS];
+        private long total;
+        private long min = Long.MAX_VALUE;
+        private long max;
+        private double mean;
+        private double m2;  // 与均值之差的平方和
+
+        void record(long value) {
+            value = Math.max(0, value);
+            counts[index(value)]++;
+            total++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            double delta = value - mean;
+            mean += delta / total;
+            m2 += delta * (value - mean);
+        }
+
+        long count() {
+            return total;
+        }
+
+        long min() {
+            return total == 0 ? 0 : min;
+        }
+
+        long max() {
+            return max;
+        }
+
+        double mean() {
+            return mean;
+        }
+
+        double stdDev() {
+            return total == 0 ? 0 : Math.sqrt(m2 / total);
+        }
+
+        // q分位 (0~1) 所在桶的中值, 不超过最大值
+        long valueAtQuantile(double q) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.max(min, Math.min(midpoint(i), max));
+                }
+            }
+            return max;
+        }
+
+        void reset() {
+            Arrays.fill(counts, 0);
+            total = 0;
+            min = Long.MAX_VALUE;
+            max = 0;
+            mean = 0;
+            m2 = 0;
+        }
+
+        private static int index(long value) {
+            if (value < LINEAR) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return LINEAR + (shift - 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+        }
+
+        private static long midpoint(int index) {
+            if (index < LINEAR) {
+                return index;
+            }
+            int shift = (index - LINEAR) / SUB_COUNT + 1;
+            long top = (index - LINEAR) % SUB_COUNT + SUB_COUNT;
+            return (top << shift) + (1L << (shift - 1));
+        }
+    }
+
+    final Histogram rtt = new Histogram();            // 整个传输的RTT(微秒)
+    private final Histogram intervalRtt = new Histogram(); // 当前采样周期的RTT(微秒)
+
+    int dataSent;        // 发出的数据包, 含重传
+    int retransmits;     // 其中的重传
+    int fastRetransmits;
+    int timeouts;        // 窗口起点的重传超时次数
+    int acks;            // 收到的ACK数, 服务器合并确认时远少于数据包数
+
+    private Writer series;       // 时间序列输出, 为null时不导出
+    private boolean csv;
+    private long intervalNanos;
+    private long startNanos;
+    private long nextSample;
+    private long lastSample;     // 上个采样点的时刻
+    private long lastBytes;      // 上个采样点的已确认字节数
+    private int lastSent;
+    private int lastRetransmits;
+
+    // 导出时间序列: 扩展名为.csv时输出CSV, 否则每行一个JSON对象
+    void exportTo(Path path, long intervalMillis) throws IOException {
+        series = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        csv = path.toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        intervalNanos = Math.max(1, intervalMillis) * 1_000_000L;
+        if (csv) {
+            series.write("t_ms,acked_bytes,goodput_bps,sent,retransmits,interval_sent,interval_retransmits,"
+                    + "cwnd,ssthresh,rwnd,rto_ms,srtt_ms,rtt_p50_us,rtt_p99_us,rtt_max_us\n");
+        }
+    }
+
+    // 传输开始, 作为时间序列的零点
+    void start(long nowNanos) {
+        startNanos = nowNanos;
+        lastSample = nowNanos;
+        nextSample = nowNanos + intervalNanos;
+    }
+
+    void onSend(boolean retransmit) {
+        dataSent++;
+        if (retransmit) {
+            retransmits++;
+        }
+    }
+
+    void onRtt(long micros) {
+        rtt.record(micros);
+        intervalRtt.record(micros);
+    }
+
+    // 到了采样时刻才输出一行, 平时只比较一次时间
+    void maybeSample(long nowNanos, long ackedBytes, double cwnd, double ssthresh, int rwnd, int rto, double srtt)
+            throws IOException {
+        if (series != null && nowNanos >= nextSample) {
+            sample(nowNanos, ackedBytes, cwnd, ssthresh, rwnd, rto, srtt);
+            nextSample = nowNanos + intervalNanos;
+        }
+    }
+
+    // 传输结束时补上最后一行并关闭输出
+    void finish(long nowNanos, long ackedBytes, double cwnd, double ssthresh, int rwnd, int rto, double srtt)
+            throws IOException {
+        if (series != null) {
+            sample(nowNanos, ackedBytes, cwnd, ssthresh, rwnd, rto, srtt);
+            series.close();
+            series = null;
+        }
+    }
+
+    private void sample(long nowNanos, long ackedBytes, double cwnd, double ssthresh, int rwnd, int rto,
+            double srtt) throws IOException {
+        double t = (nowNanos - startNanos) / 1e6;
+        double seconds = Math.max(1, nowNanos - lastSample) / 1e9;
+        double goodput = (ackedBytes - lastBytes) / seconds;
+        int sent = dataSent - lastSent;
+        int resent = retransmits - lastRetransmits;
+        if (csv) {
+            series.write(String.format(Locale.ROOT, "%.1f,%d,%.1f,%d,%d,%d,%d,%.2f,%.2f,%d,%d,%.3f,%d,%d,%d%n",
+                    t, ackedBytes, goodput, dataSent, retransmits, sent, resent, cwnd, ssthresh, rwnd, rto, srtt,
+                    intervalRtt.valueAtQuantile(0.5), intervalRtt.valueAtQuantile(0.99), intervalRtt.max()));
+        } else {
+            series.write(String.format(Locale.ROOT,
+                    "{\"tMs\":%.1f,\"ackedBytes\":%d,\"goodputBps\":%.1f,\"sent\":%d,\"retransmits\":%d,"
+                            + "\"intervalSent\":%d,\"intervalRetransmits\":%d,\"cwnd\":%.2f,\"ssthresh\":%.2f,"
+                            + "\"rwnd\":%d,\"rtoMs\":%d,\"srttMs\":%.3f,\"rttP50Us\":%d,\"rttP99Us\":%d,"
+                            + "\"rttMaxUs\":%d}%n",
+                    t, ackedBytes, goodput, dataSent, retransmits, sent, resent, cwnd, ssthresh, rwnd, rto, srtt,
+                    intervalRtt.valueAtQuantile(0.5), intervalRtt.valueAtQuantile(0.99), intervalRtt.max()));
+        }
+        series.flush(); // 长时间传输时可以边传边看
+        lastSample = nowNanos;
+        lastBytes = ackedBytes;
+        lastSent = dataSent;
+        lastRetransmits = retransmits;
+        intervalRtt.reset();
+    }
+}
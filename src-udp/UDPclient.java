@@ -1,35 +1,146 @@
+import java.io.EOFException;
+import java.io.IOException;
 import java.net.*;
 import java.util.*;
 import java.nio.ByteBuffer;
-
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 可靠UDP传输客户端. 默认发送若干随机80字节包; file=路径 时从 FileChannel 按MTU大小分段发送整个文件.
+ * 内部以64位字节偏移和int包序号记账, 头部只携带偏移的低32位 (见 Packetcodec.unwrap), 因此文件大小不受32位限制.
+ * 收发都经过已连接的 DatagramChannel 和两个复用的直接缓冲区, 文件数据直接读入发送缓冲区.
+ * 每个在途包在时间轮上有自己的重传定时器, 事件循环在ACK到达或最早的定时器到期时醒来.
+ */
 public class UDPclient {
-    private static final int WINDOW_SIZE = 400; // 400字节窗口
-    private static final int MAX_PACKETS = 30;   // 发送30个包
-    private static final int PACKET_SIZE = 80;   // 固定包大小80字节
-
-    private DatagramSocket socket;
-    private InetAddress serverAddress;
-    private int serverPort;
-    private int base = 0;          // 窗口起始序列号(字节偏移)
-    private int totalSent = 0;     // 总发送包数（含重传）
-    private Map<Integer, Long> sendTimes = new HashMap<>();
-    private List<Long> rttList = new ArrayList<>();
+    private static final int INITIAL_CWND = 4;   // 初始拥塞窗口(包)
+    private static final int INITIAL_SSTHRESH = 64; // 初始慢启动阈值(包)
+    private static final int MAX_RWND = 255;     // 1字节保留字段能通告的最大接收窗口(包), 收到第一个ACK前按此值
+    private static final int PACKET_SIZE = 80;   // 演示模式的包大小80字节
+    private static final int IP_UDP_OVERHEAD = 28; // IPv4头20字节 + UDP头8字节
+    private static final int DUP_THRESH = 3;     // 3个重复ACK, 或某包之上已有3个包被SACK时判定其丢失
+    private static final int INITIAL_RTO = 300;  // 还没有RTT样本时的超时(ms)
+    private static final int MIN_RTO = 100;
+    private static final int MAX_RTO = 3000;     // 指数退避的上限
+    // 在途包的环形记录; 通告窗口只有1字节, 在途包数小于256
+    private static final int RING = 256;
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private final ByteBuffer tx = ByteBuffer.allocateDirect(Packetcodec.MAX_DATAGRAM);
+    private final ByteBuffer rx = ByteBuffer.allocateDirect(Packetcodec.MAX_DATAGRAM);
+    private final Packetcodec view = new Packetcodec();
+    private long base = 0;         // 窗口起始序列号(字节偏移)
+    private long nextSeq = 0;      // 回退N步模式下下一个待发送的序列号
+    private int maxPackets = 30;   // 发送的包数, 默认30个
+    private int packetSize = PACKET_SIZE; // 每包载荷字节数, 最后一包可能较短
+    private long totalBytes;       // 传输总字节数
+    private FileChannel file;      // 文件模式的数据来源, 演示模式为null
+    private boolean verbose = true; // 是否逐包打印日志, 大文件传输时应关闭
+    private double cwnd = INITIAL_CWND;       // 拥塞窗口(包), 拥塞避免阶段按小数增长
+    private double ssthresh = INITIAL_SSTHRESH;
+    private int rwnd = MAX_RWND;              // 接收方在ACK保留字节中通告的窗口(包)
+    private long recover = 0;      // 上次丢失时已发出的最高序列号, ACK越过它之前不再重复减窗
+    private int dupAcks = 0;
+    private double maxCwnd = INITIAL_CWND;
+    private int firstUnsent = 0;   // 尚未首次发送的第一个包; 序号更小的包再发送即为重传
+    // 以下按 包序号 & (RING-1) 索引, 包首次发送时清零
+    private final long[] sendTimes = new long[RING];         // 最近一次发送时间(纳秒)
+    private final boolean[] retransmitted = new boolean[RING]; // 重传过的包, 其ACK不用于RTT采样(Karn算法)
+    private final boolean[] acked = new boolean[RING];        // 选择重传模式下是否已被确认
+    private final boolean[] fastRetransmitted = new boolean[RING]; // 已因SACK判定丢失而重传过, 超时前不再重复
+    private final Timerwheel.Timer[] timers = new Timerwheel.Timer[RING]; // 每个在途包各自的重传定时器
+    // 1ms一格, 4096格一圈, 覆盖最大RTO
+    private final Timerwheel wheel = new Timerwheel(4096, 1, Timerwheel.nowMillis());
+    private final Timerwheel.Handler onExpired = this::segmentTimeout;
+    private double srtt = -1;        // 平滑RTT(ms), 负数表示尚无样本
+    private double rttvar;           // RTT平均偏差(ms)
+    private int rto = INITIAL_RTO;   // 当前重传超时(ms)
+    private final Transferstats stats = new Transferstats(); // 计数器、RTT直方图和可选的时间序列导出
     private List<byte[]> packets = new ArrayList<>();
     private boolean connected = false;
-    private int lastAck = -1;
+    private long lastAck = 0;
+    private int connId;            // 连接ID: 取SYN的初始序列号, 数据包在确认号字段携带它供服务器区分会话
+    private boolean selectiveRepeat;   // true: 选择重传(SACK), false: 回退N步
+    private long transferStart;
+    private long transferEnd;
 
     public static void main(String[] args) throws Exception {
-        System.out.println("输入ip和port,空格隔开");
+        System.out.println("输入ip和port,空格隔开; 末尾加sr使用选择重传(默认gbn), packets=N指定发送包数");
+        System.out.println("file=路径 发送文件, mtu=N 路径MTU(默认1500), quiet 关闭逐包日志");
+        System.out.println("series=路径 导出时间序列(.csv为CSV, 否则为JSON行), interval=毫秒 采样周期(默认1000)");
         Scanner scanner = new Scanner(System.in);
         String[] ary=scanner.nextLine().split("( +)");
-        new UDPclient(ary[0], Integer.parseInt(ary[1])).start();
+        boolean sr = false;
+        int count = 30;
+        String path = null;
+        int mtu = 1500;
+        boolean verbose = true;
+        String series = null;
+        long interval = 1000;
+        for (int i = 2; i < ary.length; i++) {
+            if (ary[i].equalsIgnoreCase("sr")) {
+                sr = true;
+            } else if (ary[i].startsWith("packets=")) {
+                count = Integer.parseInt(ary[i].substring("packets=".length()));
+            } else if (ary[i].startsWith("file=")) {
+                path = ary[i].substring("file=".length());
+            } else if (ary[i].startsWith("mtu=")) {
+                mtu = Integer.parseInt(ary[i].substring("mtu=".length()));
+            } else if (ary[i].equalsIgnoreCase("quiet")) {
+                verbose = false;
+            } else if (ary[i].startsWith("series=")) {
+                series = ary[i].substring("series=".length());
+            } else if (ary[i].startsWith("interval=")) {
+                interval = Long.parseLong(ary[i].substring("interval=".length()));
+            }
+        }
+        UDPclient client = new UDPclient(ary[0], Integer.parseInt(ary[1]), sr);
+        client.maxPackets = count;
+        client.verbose = verbose;
+        if (path != null) {
+            client.openFile(path, mtu);
+        }
+        if (series != null) {
+            client.stats.exportTo(Paths.get(series), interval);
+        }
+        client.start();
     }
 
     public UDPclient(String ip, int port) throws Exception {
-        this.serverAddress = InetAddress.getByName(ip);
-        this.serverPort = port;
-        this.socket = new DatagramSocket();
-        socket.setSoTimeout(100); // 设置接收超时100ms
+        this(ip, port, false);
+    }
+
+    public UDPclient(String ip, int port, boolean selectiveRepeat) throws Exception {
+        this.selectiveRepeat = selectiveRepeat;
+        this.channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, 1 << 20);
+        channel.connect(new InetSocketAddress(InetAddress.getByName(ip), port));
+        channel.configureBlocking(false);
+        this.selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        for (int i = 0; i < RING; i++) {
+            timers[i] = new Timerwheel.Timer(i);
+        }
+    }
+
+    // 文件模式: 每包载荷取 MTU 减去IP/UDP头和协议头, 使数据报不被分片
+    public void openFile(String path, int mtu) throws IOException {
+        file = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        packetSize = mtu - IP_UDP_OVERHEAD - Packetcodec.HEADER_SIZE;
+        if (packetSize <= 0 || Packetcodec.HEADER_SIZE + packetSize > Packetcodec.MAX_DATAGRAM) {
+            throw new IllegalArgumentException("MTU超出范围: " + mtu);
+        }
+        totalBytes = file.size();
+        long count = (totalBytes + packetSize - 1) / packetSize;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("文件过大: " + totalBytes + " 字节");
+        }
+        maxPackets = (int) count;
     }
 
     public void start() throws Exception {
@@ -39,187 +150,451 @@ public class UDPclient {
             return;
         }
 
-        // 2. 生成数据包
-        generatePackets();
-
-        // 3. 发送数据（GBN协议）
-        while (base < MAX_PACKETS * PACKET_SIZE) {
-            sendWindow();
-            if (!waitForAck()) {
-                System.out.println("[超时] 重传窗口: " + base + "-" + (base + WINDOW_SIZE - 1));
-                totalSent += (base + WINDOW_SIZE) / PACKET_SIZE - base / PACKET_SIZE;
-            }
+        // 2. 生成数据包（文件模式按需从文件读取）
+        if (file == null) {
+            generatePackets();
+        } else {
+            System.out.println("[准备] 文件 " + totalBytes + " 字节, 分为 " + maxPackets + " 个包, 每包 " + packetSize + " 字节");
         }
 
+        // 3. 发送数据（GBN协议或选择重传）
+        transferStart = Timerwheel.nowMillis();
+        stats.start(System.nanoTime());
+        runTransfer();
+        transferEnd = Timerwheel.nowMillis();
+        stats.finish(System.nanoTime(), base, cwnd, ssthresh, rwnd, rto, srtt);
+        closeConnection();
+
         // 4. 打印统计结果
         printStatistics();
-        socket.close();
+        selector.close();
+        channel.close();
+        if (file != null) {
+            file.close();
+        }
     }
 
     // 完整的三次握手实现
     private boolean establishConnection() throws Exception {
         // 第一次握手：发送SYN
         int clientSeq = new Random().nextInt(10000);
-        byte[] synPacket = createPacket(0, clientSeq, 0, new byte[0]);
-        socket.send(new DatagramPacket(synPacket, synPacket.length, serverAddress, serverPort));
+        connId = clientSeq;
+        sendControl(Packetcodec.SYN, clientSeq, 0, selectiveRepeat ? Packetcodec.FLAG_SACK : 0);
         System.out.println("[握手] 发送SYN, seq=" + clientSeq);
 
         // 等待第二次握手：SYN-ACK
-        byte[] buffer = new byte[1024];
-        DatagramPacket response = new DatagramPacket(buffer, buffer.length);
-        long startTime = System.currentTimeMillis();
+        long startTime = Timerwheel.nowMillis();
+        long lastSyn = startTime;
+
+        while (Timerwheel.nowMillis() - startTime < 3000) {
+            // SYN或SYN-ACK可能丢失, 每秒重发一次SYN; 服务器对同一连接ID的重复SYN重发SYN-ACK
+            if (Timerwheel.nowMillis() - lastSyn >= 1000) {
+                sendControl(Packetcodec.SYN, clientSeq, 0, selectiveRepeat ? Packetcodec.FLAG_SACK : 0);
+                lastSyn = Timerwheel.nowMillis();
+                System.out.println("[握手] 重发SYN, seq=" + clientSeq);
+            }
+            if (!receive(Math.min(startTime + 3000, lastSyn + 1000))) {
+                continue;
+            }
 
-        while (System.currentTimeMillis() - startTime < 3000) {
+            // 验证SYN-ACK包
+            if (view.type() == Packetcodec.SYN_ACK && view.ack() == clientSeq + 1) {
+                int serverSeq = view.seq();
+                System.out.println("[握手] 收到SYN-ACK, seq=" + serverSeq + ", ack=" + view.ack());
+                if (selectiveRepeat && (view.reserved() & Packetcodec.FLAG_SACK) == 0) {
+                    System.out.println("[握手] 服务器不支持选择确认, 改用GBN");
+                    selectiveRepeat = false;
+                }
+
+                // 第三次握手：发送ACK
+                sendControl(Packetcodec.ACK, clientSeq + 1, serverSeq + 1, 0);
+                System.out.println("[握手] 发送ACK, ack=" + (serverSeq + 1));
+                connected = true;
+                return true;
+            }
+        }
+        return false; // 超时失败
+    }
+
+    // 在截止时间(毫秒时间戳)前等待一个数据报读入rx并用view解析, 超时返回false
+    private boolean receive(long deadline) throws IOException {
+        while (true) {
+            rx.clear();
+            int n;
             try {
-                socket.receive(response);
-                PacketHeader header = parseHeader(response.getData());
-
-                // 验证SYN-ACK包
-                if (header.type == 1 && header.ackNum == clientSeq + 1) {
-                    System.out.println("[握手] 收到SYN-ACK, seq=" + header.seqNum + ", ack=" + header.ackNum);
-
-                    // 第三次握手：发送ACK
-                    byte[] ackPacket = createPacket(2, 0, header.seqNum + 1, new byte[0]);
-                    socket.send(new DatagramPacket(ackPacket, ackPacket.length, serverAddress, serverPort));
-                    System.out.println("[握手] 发送ACK, ack=" + (header.seqNum + 1));
-                    connected = true;
+                n = channel.read(rx);
+            } catch (PortUnreachableException e) {
+                n = 0; // 服务器端口暂未打开, 与丢包同样处理
+            }
+            if (n > 0) {
+                rx.flip();
+                if (view.wrap(rx).valid()) {
                     return true;
                 }
-            } catch (SocketTimeoutException e) {
-                // 继续等待
+                continue;
+            }
+            long wait = deadline - Timerwheel.nowMillis();
+            if (wait <= 0) {
+                return false;
             }
+            selector.select(wait);
+            selector.selectedKeys().clear();
         }
-        return false; // 超时失败
+    }
+
+    private void sendControl(int type, int seq, int ack, int reserved) throws IOException {
+        Packetcodec.encode(tx, type, seq, ack, reserved);
+        channel.write(tx);
     }
 
     private void generatePackets() {
-        for (int i = 0; i < MAX_PACKETS; i++) {
+        for (int i = 0; i < maxPackets; i++) {
             byte[] data = new byte[PACKET_SIZE];
             new Random().nextBytes(data);
             packets.add(data);
         }
+        totalBytes = (long) maxPackets * PACKET_SIZE;
         System.out.println("[准备] 生成 " + packets.size() + " 个数据包, 每包 " + PACKET_SIZE + " 字节");
     }
 
-    // 发送当前窗口内的数据包
+    // 发送当前窗口内尚未发出的数据包; 超时后nextSeq回到base, 整个窗口重发
     private void sendWindow() throws Exception {
-        int startIdx = base / PACKET_SIZE;
-        int endIdx = Math.min(startIdx + (WINDOW_SIZE / PACKET_SIZE), MAX_PACKETS);
+        int startIdx = indexAt(Math.max(base, nextSeq));
+        int endIdx = Math.min((int) (base / packetSize) + window(), maxPackets);
+        nextSeq = Math.max(nextSeq, Math.min(offset(endIdx), totalBytes));
 
         for (int i = startIdx; i < endIdx; i++) {
-            int seq = i * PACKET_SIZE;
-            byte[] data = packets.get(i);
-            byte[] packet = createPacket(3, seq, 0, data);
-            DatagramPacket dp = new DatagramPacket(packet, packet.length, serverAddress, serverPort);
-            socket.send(dp);
+            sendPacket(i, i < firstUnsent);
+        }
+    }
 
-            sendTimes.put(seq, System.currentTimeMillis());
-            totalSent++;
+    // 发送第i包并记录发送时间; 首次发送时清零它在环形记录中的槽位
+    private void sendPacket(int i, boolean retransmit) throws Exception {
+        int slot = i & (RING - 1);
+        if (i >= firstUnsent) {
+            firstUnsent = i + 1;
+            acked[slot] = false;
+            fastRetransmitted[slot] = false;
+            retransmitted[slot] = false;
+        }
+        if (file == null) {
+            createPacket(tx, (int) offset(i), connId, packets.get(i));
+        } else {
+            Packetcodec.begin(tx, Packetcodec.DATA, (int) offset(i), connId, 0);
+            putPayload(i);
+            Packetcodec.finish(tx);
+        }
+        channel.write(tx);
+        sendTimes[slot] = System.nanoTime();
+        wheel.schedule(timers[slot], rto, Timerwheel.nowMillis());
+        if (retransmit) {
+            retransmitted[slot] = true;
+        }
+        stats.onSend(retransmit);
+        if (verbose) {
+            System.out.printf("[%s] 包 %d (字节 %d-%d) 已发送%n", retransmit ? "重传" : "发送",
+                    i, offset(i), offset(i) + length(i) - 1);
+        }
+    }
 
-            int startByte = seq;
-            int endByte = seq + PACKET_SIZE - 1;
-            System.out.printf("[发送] 包 %d (字节 %d-%d) 已发送%n", i, startByte, endByte);
+    // 把载荷为data的数据包编码进tx, 序列号为其字节偏移的低32位, 确认号携带连接ID
+    static void createPacket(ByteBuffer tx, int seq, int connId, byte[] data) {
+        Packetcodec.begin(tx, Packetcodec.DATA, seq, connId, 0);
+        tx.put(data);
+        Packetcodec.finish(tx);
+    }
+
+    // 文件模式下把第i包的载荷按偏移直接从文件读入tx, 不在内存中保留整个文件
+    private void putPayload(int i) throws IOException {
+        int end = tx.position() + length(i);
+        long pos = offset(i) - tx.position();
+        tx.limit(end);
+        while (tx.hasRemaining()) {
+            if (file.read(tx, pos + tx.position()) < 0) {
+                throw new EOFException("文件在传输中被截短");
+            }
         }
+        tx.limit(tx.capacity());
     }
 
-    // 等待ACK
-    private boolean waitForAck() throws Exception {
-        byte[] buffer = new byte[1024];
-        DatagramPacket response = new DatagramPacket(buffer, buffer.length);
-        long startTime = System.currentTimeMillis();
-        int timeout = calculateTimeout();
+    private long offset(int i) {
+        return (long) i * packetSize;
+    }
 
-        while (System.currentTimeMillis() - startTime < timeout) {
-            try {
-                socket.receive(response);
-                PacketHeader header = parseHeader(response.getData());
-
-                if (header.type == 2) { // ACK包
-                    // 忽略重复ACK
-                    if (header.ackNum <= lastAck) continue;
-
-                    lastAck = header.ackNum;
-                    long sendTime = sendTimes.getOrDefault(header.ackNum - PACKET_SIZE, System.currentTimeMillis());
-                    long rtt = System.currentTimeMillis() - sendTime;
-                    rttList.add(rtt);
-
-                    // 更新窗口
-                    base = header.ackNum;
-                    int packetIdx = (header.ackNum - 1) / PACKET_SIZE;
-                    System.out.printf("[确认] 包 %d (字节 %d-%d) 已确认, RTT=%dms%n",
-                            packetIdx, packetIdx * PACKET_SIZE, (packetIdx + 1) * PACKET_SIZE - 1, rtt);
-                    return true;
+    private int length(int i) {
+        return (int) Math.min(packetSize, totalBytes - offset(i));
+    }
+
+    // 字节偏移所在的包序号, 向上取整; 确认号和SACK区间终点总在包边界或文件末尾
+    private int indexAt(long offset) {
+        return (int) ((offset + packetSize - 1) / packetSize);
+    }
+
+    // 所有数据确认后发送FIN(序列号为总字节数), 等待服务器回复FIN, 最多尝试3次
+    private void closeConnection() throws Exception {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            sendControl(Packetcodec.FIN, (int) totalBytes, connId, 0);
+            long deadline = Timerwheel.nowMillis() + calculateTimeout();
+            while (receive(deadline)) {
+                if (view.type() == Packetcodec.FIN && view.ack() == (int) totalBytes + 1) {
+                    System.out.println("[关闭] 服务器已确认FIN");
+                    return;
                 }
-            } catch (SocketTimeoutException e) {
-                // 继续等待
             }
         }
-        return false; // 超时
+        System.out.println("[关闭] 未收到服务器的FIN应答");
     }
 
-    // 动态计算超时时间
-    private int calculateTimeout() {
-        if (rttList.isEmpty()) return 300;
-        long sum = 0;
-        for (long rtt : rttList) sum += rtt;
-        return (int) Math.max(100, 2 * sum / rttList.size());
+    // 事件循环: 填满窗口后等待, 直到收到ACK或最早的段定时器到期, 两者都处理完再继续
+    private void runTransfer() throws Exception {
+        while (base < totalBytes) {
+            if (selectiveRepeat) {
+                int end = Math.min((int) (base / packetSize) + window(), maxPackets);
+                while (firstUnsent < end) {
+                    sendPacket(firstUnsent, false);
+                }
+            } else {
+                sendWindow();
+            }
+            long now = Timerwheel.nowMillis();
+            long delay = wheel.delayToNext(now);
+            if (receive(now + (delay < 0 ? MAX_RTO : delay)) && view.type() == Packetcodec.ACK) {
+                stats.acks++;
+                rwnd = view.reserved();
+                if (selectiveRepeat) {
+                    handleSack();
+                } else {
+                    handleAck();
+                }
+            }
+            wheel.advance(Timerwheel.nowMillis(), onExpired);
+            stats.maybeSample(System.nanoTime(), base, cwnd, ssthresh, rwnd, rto, srtt);
+        }
+        for (Timerwheel.Timer t : timers) {
+            wheel.cancel(t);
+        }
     }
 
-    // 生成统计报告（中文输出）
-    private void printStatistics() {
-        double lossRate = (1.0 - (double) MAX_PACKETS / totalSent) * 100;
+    // 回退N步: 处理累积确认; 连续DUP_THRESH个重复ACK时快速重传, 即从base起回退, 不必等待超时
+    private void handleAck() {
+        long ack = Packetcodec.unwrap(view.ack(), base);
+        if (ack == lastAck && ++dupAcks == DUP_THRESH && lastAck >= recover) {
+            onCongestion(false, indexAt(nextSeq) - (int) (base / packetSize), nextSeq);
+            stats.fastRetransmits++;
+            System.out.println("[快速重传] 收到" + DUP_THRESH + "个重复ACK=" + lastAck + ", " + windowText());
+            nextSeq = base;
+            return;
+        }
+        if (ack <= lastAck || ack > totalBytes) return;
+
+        lastAck = ack;
+        dupAcks = 0;
+        int baseIdx = (int) (base / packetSize);
+        int packetIdx = indexAt(ack) - 1;
+        long rtt = sampleRtt(packetIdx);
+
+        // 更新窗口, 已确认包的定时器不再需要
+        onAcked(packetIdx + 1 - baseIdx);
+        for (int i = baseIdx; i <= packetIdx; i++) {
+            wheel.cancel(timers[i & (RING - 1)]);
+        }
+        base = ack;
+        if (verbose) {
+            System.out.printf("[确认] 包 %d (字节 %d-%d) 已确认, %s, %s%n",
+                    packetIdx, offset(packetIdx), ack - 1, rttText(rtt), windowText());
+        }
+    }
 
-        System.out.println("\n===== 传输统计 =====");
-        System.out.printf("丢包率: %.2f%%%n", lossRate);
-        System.out.printf("总发送包数: %d%n", totalSent);
+    // 选择重传: 处理累积确认和SACK区间; SACK显示某包之上已有足够多的包到达时, 不必等超时即可重传该空洞
+    private void handleSack() throws Exception {
+        int newest = -1; // 本次新确认的最大包序号, 用于采样RTT
+        int newlyAcked = 0;
+        long ack = Math.min(Packetcodec.unwrap(view.ack(), base), totalBytes);
+        int baseIdx = (int) (base / packetSize);
+        for (int i = baseIdx; i < Math.min(indexAt(ack), firstUnsent); i++) {
+            if (markAcked(i)) {
+                newest = i;
+                newlyAcked++;
+            }
+        }
+        if (ack > base) {
+            base = ack;
+        }
+        for (int b = 0; b < Math.min(view.sackCount(), Packetcodec.MAX_SACK); b++) {
+            long start = Packetcodec.unwrap(view.sackStart(b), base);
+            long end = Packetcodec.unwrap(view.sackEnd(b), base);
+            int from = (int) (Math.max(start, base) / packetSize);
+            for (int i = from; i < indexAt(end) && i < firstUnsent; i++) {
+                if (markAcked(i)) {
+                    newest = Math.max(newest, i);
+                    newlyAcked++;
+                }
+            }
+        }
+        if (newest < 0) return; // 没有新信息的重复ACK
 
-        if (!rttList.isEmpty()) {
-            long maxRTT = Collections.max(rttList);
-            long minRTT = Collections.min(rttList);
-            double avgRTT = rttList.stream().mapToLong(v -> v).average().orElse(0);
+        long rtt = sampleRtt(newest);
+        onAcked(newlyAcked);
+        if (verbose) {
+            System.out.printf("[确认] 累积确认至字节 %d, 最新确认包 %d, %s, %s%n", base, newest, rttText(rtt),
+                    windowText());
+        }
 
-            double variance = 0;
-            for (long rtt : rttList) {
-                variance += Math.pow(rtt - avgRTT, 2);
+        int above = 0;
+        for (int i = firstUnsent - 1; i >= base / packetSize; i--) {
+            int slot = i & (RING - 1);
+            if (acked[slot]) {
+                above++;
+            } else if (above >= DUP_THRESH && !fastRetransmitted[slot]) {
+                if (base >= recover) {
+                    // 一个窗口内的多处丢失只减一次窗
+                    onCongestion(false, firstUnsent - (int) (base / packetSize),
+                            Math.min(offset(firstUnsent), totalBytes));
+                    System.out.println("[快速重传] SACK显示包 " + i + " 丢失, " + windowText());
+                }
+                fastRetransmitted[slot] = true;
+                stats.fastRetransmits++;
+                sendPacket(i, true);
             }
-            double stdDev = Math.sqrt(variance / rttList.size());
-
-            System.out.printf("最大RTT: %dms%n", maxRTT);
-            System.out.printf("最小RTT: %dms%n", minRTT);
-            System.out.printf("平均RTT: %.2fms%n", avgRTT);
-            System.out.printf("RTT标准差: %.2fms%n", stdDev);
-        }
-    }
-
-    // 创建协议数据包
-    private byte[] createPacket(int type, int seq, int ack, byte[] data) {
-        ByteBuffer buffer = ByteBuffer.allocate(12 + data.length);
-        buffer.put((byte) type);      // 1字节类型
-        buffer.putInt(seq);           // 4字节序列号
-        buffer.putInt(ack);           // 4字节确认号
-        buffer.putShort((short) data.length); // 2字节数据长度
-        buffer.put(new byte[1]);      // 1字节保留
-        buffer.put(data);             // 数据
-        return buffer.array();
-    }
-
-    // 解析协议头部
-    private PacketHeader parseHeader(byte[] data) {
-        ByteBuffer buffer = ByteBuffer.wrap(data);
-        PacketHeader header = new PacketHeader();
-        header.type = buffer.get();
-        header.seqNum = buffer.getInt();
-        header.ackNum = buffer.getInt();
-        header.dataLength = buffer.getShort();
-        buffer.get(); // 跳过保留字节
-        return header;
-    }
-
-    // 协议头部结构
-    static class PacketHeader {
-        byte type;
-        int seqNum;
-        int ackNum;
-        short dataLength;
-    }
-}
\ No newline at end of file
+        }
+    }
+
+    private boolean markAcked(int i) {
+        int slot = i & (RING - 1);
+        if (acked[slot]) {
+            return false;
+        }
+        acked[slot] = true;
+        wheel.cancel(timers[slot]);
+        return true;
+    }
+
+    // 段定时器到期. 窗口最早的未确认包超时才退避RTO并按超时减窗, 与单定时器时一致;
+    // 选择重传模式下其他包各自超时只重传该包, 回退N步模式下它们等base超时后随整窗重发
+    private void segmentTimeout(Timerwheel.Timer timer) throws Exception {
+        int baseIdx = (int) (base / packetSize);
+        int i = baseIdx + ((timer.id - baseIdx) & (RING - 1)); // 由槽位还原在途包序号
+        if (i >= firstUnsent || (selectiveRepeat && acked[timer.id])) {
+            return;
+        }
+        if (i == baseIdx) {
+            stats.timeouts++;
+            onTimeout();
+            if (selectiveRepeat) {
+                onCongestion(true, firstUnsent - baseIdx, Math.min(offset(firstUnsent), totalBytes));
+                System.out.println("[超时] 包 " + i + " 超时, RTO退避至" + rto + "ms, " + windowText());
+            } else {
+                long windowBytes = (long) window() * packetSize;
+                onCongestion(true, indexAt(nextSeq) - baseIdx, nextSeq);
+                System.out.println("[超时] 重传窗口: " + base + "-" + (base + windowBytes - 1) + ", RTO退避至" + rto
+                        + "ms, " + windowText());
+                nextSeq = base; // 回退到窗口起点, 下一轮整窗重传
+                return;
+            }
+        } else if (!selectiveRepeat) {
+            return;
+        }
+        fastRetransmitted[timer.id] = false;
+        sendPacket(i, true);
+    }
+
+    // 对第i包的确认取RTT样本(微秒)并更新RTO; 按Karn算法, 重传过的包不采样, 返回-1
+    private long sampleRtt(int i) {
+        int slot = i & (RING - 1);
+        if (i >= firstUnsent || retransmitted[slot]) {
+            return -1;
+        }
+        long micros = (System.nanoTime() - sendTimes[slot]) / 1000;
+        stats.onRtt(micros);
+        double rtt = micros / 1000.0;
+        // Jacobson/Karels: RTTVAR = 3/4*RTTVAR + 1/4*|SRTT-R|, SRTT = 7/8*SRTT + 1/8*R
+        if (srtt < 0) {
+            srtt = rtt;
+            rttvar = rtt / 2.0;
+        } else {
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+            srtt = 0.875 * srtt + 0.125 * rtt;
+        }
+        // RTO = SRTT + max(时钟粒度, 4*RTTVAR); 新样本同时清除之前的退避
+        rto = (int) Math.min(MAX_RTO, Math.max(MIN_RTO, Math.ceil(srtt + Math.max(1, 4 * rttvar))));
+        return micros;
+    }
+
+    // 超时后指数退避
+    private void onTimeout() {
+        rto = Math.min(MAX_RTO, rto * 2);
+    }
+
+    // 每确认一个新包: 慢启动阶段窗口加1, 拥塞避免阶段每个RTT约加1; 受通告窗口限制时不再增长
+    private void onAcked(int packetsAcked) {
+        for (int i = 0; i < packetsAcked && cwnd < rwnd; i++) {
+            cwnd += cwnd < ssthresh ? 1 : 1 / cwnd;
+        }
+        maxCwnd = Math.max(maxCwnd, cwnd);
+    }
+
+    // 判定丢包: 阈值减为在途包数的一半; 超时回到1个包重新慢启动, 快速重传则直接进入拥塞避免
+    private void onCongestion(boolean timeout, int flight, long highestSent) {
+        ssthresh = Math.max(flight / 2.0, 2);
+        cwnd = timeout ? 1 : ssthresh;
+        recover = highestSent;
+        dupAcks = 0;
+    }
+
+    // 实际发送窗口取拥塞窗口与通告窗口的较小者; 通告窗口为0时仍允许1个包探测
+    private int window() {
+        return Math.max(1, Math.min(Math.min((int) cwnd, rwnd), RING - 1));
+    }
+
+    private String windowText() {
+        return String.format("cwnd=%.1f ssthresh=%.1f rwnd=%d", cwnd, ssthresh, rwnd);
+    }
+
+    private static String rttText(long micros) {
+        return micros < 0 ? "RTT=-(重传包不采样)" : String.format("RTT=%.2fms", micros / 1000.0);
+    }
+
+    // 当前重传超时, O(1)
+    private int calculateTimeout() {
+        return rto;
+    }
+
+    // 生成统计报告（中文输出）; 所有数字都来自流式统计, 与传输长度无关
+    private void printStatistics() {
+        int resent = stats.dataSent - maxPackets; // 每包至少发送一次, 多出的都是重传
+        System.out.println("\n===== 传输统计 =====");
+        System.out.printf("重传率: %.2f%% (%d/%d, 含伪重传)%n", 100.0 * resent / stats.dataSent, resent, stats.dataSent);
+        System.out.printf("总发送包数: %d%n", stats.dataSent);
+
+        // 有效载荷占实际发出数据的比例, 以及按传输耗时计算的有效吞吐
+        double seconds = Math.max(1, transferEnd - transferStart) / 1000.0;
+        System.out.printf("传输模式: %s%n", selectiveRepeat ? "选择重传(SACK)" : "回退N步(GBN)");
+        System.out.printf("实际发出数据包: %d, 有效率: %.2f%%, 收到ACK: %d%n",
+                stats.dataSent, 100.0 * maxPackets / stats.dataSent, stats.acks);
+        System.out.printf("有效吞吐(goodput): %.2f 字节/秒 (耗时 %.3fs)%n",
+                totalBytes / seconds, seconds);
+
+        Transferstats.Histogram h = stats.rtt;
+        if (h.count() > 0) {
+            System.out.printf("最大RTT: %.2fms%n", h.max() / 1000.0);
+            System.out.printf("最小RTT: %.2fms%n", h.min() / 1000.0);
+            System.out.printf("平均RTT: %.2fms%n", h.mean() / 1000.0);
+            System.out.printf("RTT标准差: %.2fms%n", h.stdDev() / 1000.0);
+            System.out.printf("RTT分位数: p50=%.2fms p90=%.2fms p99=%.2fms (样本 %d)%n",
+                    h.valueAtQuantile(0.5) / 1000.0, h.valueAtQuantile(0.9) / 1000.0,
+                    h.valueAtQuantile(0.99) / 1000.0, h.count());
+            System.out.printf("SRTT: %.2fms, RTTVAR: %.2fms, 最终RTO: %dms%n", srtt, rttvar, rto);
+        }
+        System.out.printf("最大拥塞窗口: %.1f 包, 最终cwnd: %.1f, ssthresh: %.1f, 快速重传: %d 次, 超时: %d 次%n",
+                maxCwnd, cwnd, ssthresh, stats.fastRetransmits, stats.timeouts);
+        // 一行JSON汇总, 供 Udpsweep 等脚本解析
+        System.out.println(String.format(Locale.ROOT,
+                "{\"mode\":\"%s\",\"bytes\":%d,\"packets\":%d,\"seconds\":%.3f,\"goodputBps\":%.1f,"
+                        + "\"dataSent\":%d,\"retransmits\":%d,\"acks\":%d,\"fastRetransmits\":%d,\"timeouts\":%d,"
+                        + "\"srttMs\":%.2f,\"rtoMs\":%d,\"maxCwnd\":%.1f,\"rttP50Us\":%d,\"rttP99Us\":%d,"
+                        + "\"rttMaxUs\":%d}",
+                selectiveRepeat ? "sr" : "gbn", totalBytes, maxPackets, seconds, totalBytes / seconds,
+                stats.dataSent, stats.retransmits, stats.acks, stats.fastRetransmits, stats.timeouts, srtt, rto,
+                maxCwnd, h.valueAtQuantile(0.5), h.valueAtQuantile(0.99), h.max()));
+    }
+}
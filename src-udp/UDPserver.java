@@ -1,131 +1,578 @@
 import java.net.*;
 import java.nio.ByteBuffer;
-import java.util.Random;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 多会话UDP服务器: 一个I/O线程在非阻塞 DatagramChannel 上收包, 按 (地址:端口, 连接ID) 分发给工作线程.
+ * 同一会话总由同一工作线程处理, 会话状态无需加锁. 连接ID是客户端SYN的初始序列号,
+ * 握手最后的ACK在序列号字段携带 ID+1, 数据包和FIN在确认号字段携带 ID.
+ * 头部的序列号/确认号是64位字节偏移的低32位, 收发双方以期望偏移为参照还原 (见 Packetcodec.unwrap).
+ * 数据报收进预分配的直接缓冲区池, 处理完归还, 按序数据从缓冲区直接写盘; 乱序段连同缓冲区留在会话的
+ * 定长乱序环中, 交付后再归还. 收发路径上不逐包分配对象.
+ */
 public class UDPserver {
-    private static final double LOSS_RATE = 0.2; // 20%丢包率
+    static final double DEFAULT_LOSS_RATE = 0.2; // 默认20%丢包率; 经 Impairproxy 测试时应设为0
+    static final int RECV_WINDOW = 64; // 接收缓存(包), 扣除已缓存的乱序段后在ACK保留字节中通告
+    private static final long SESSION_IDLE_MS = 30_000; // 会话空闲超过此时间即清理
+    private static final int DEFAULT_ACK_DELAY_MS = 10; // 延迟确认的最长等待, 须远小于客户端的最小RTO
+    private static final int POOL_SIZE = 2048; // 缓冲区池大小; 池耗尽时丢包, 与套接字缓冲区溢出的效果相同
+    // 池中空闲缓冲区不多于此数时不再缓存乱序段, 以免乱序环占满缓冲区池后按序段也收不进来
+    private static final int POOL_RESERVE = POOL_SIZE / 4;
     private final int port;
-    private int expectedSeq = 0;    // 期望接收的序列号(字节偏移)
-    private final Random random = new Random();
-    private int clientSeq = -1;
+    private final int workers;
+    private boolean verbose = true;   // 是否逐包打印日志, 大量并发会话时可关闭
+    private Path dir;                 // 非空时每个会话把按序数据写入该目录下的文件
+    private double lossRate = DEFAULT_LOSS_RATE; // 收到数据包时模拟丢弃的概率
+    private int ackEvery = 1;         // 每收到几个按序段确认一次, 1表示逐包确认
+    private int ackDelayMs = DEFAULT_ACK_DELAY_MS; // 不足ackEvery个段时最多延迟多久确认
+    private DatagramChannel channel;
+    private final BlockingQueue<Datagram> free = new ArrayBlockingQueue<>(POOL_SIZE);
 
     public static void main(String[] args) throws Exception {
-        System.out.println("输入监听端口");
+        System.out.println("输入监听端口; 可选 workers=N 指定工作线程数, quiet 关闭逐包日志, dir=目录 把收到的数据写入文件");
+        System.out.println("loss=R 数据包模拟丢包率(默认" + DEFAULT_LOSS_RATE + "), 配合 Impairproxy 使用时设为0");
+        System.out.println("ack=N 每N个按序段合并确认一次(默认1), ackdelay=毫秒 合并确认的最长延迟(默认" + DEFAULT_ACK_DELAY_MS + ")");
         Scanner scanner = new Scanner(System.in);
-        int port = scanner.nextInt();
-        new UDPserver(port).start();
+        String[] ary = scanner.nextLine().trim().split("( +)");
+        int workers = Runtime.getRuntime().availableProcessors();
+        boolean verbose = true;
+        Path dir = null;
+        double loss = DEFAULT_LOSS_RATE;
+        int ackEvery = 1;
+        int ackDelay = DEFAULT_ACK_DELAY_MS;
+        for (int i = 1; i < ary.length; i++) {
+            if (ary[i].startsWith("workers=")) {
+                workers = Integer.parseInt(ary[i].substring("workers=".length()));
+            } else if (ary[i].equalsIgnoreCase("quiet")) {
+                verbose = false;
+            } else if (ary[i].startsWith("dir=")) {
+                dir = Files.createDirectories(Paths.get(ary[i].substring("dir=".length())));
+            } else if (ary[i].startsWith("loss=")) {
+                loss = Double.parseDouble(ary[i].substring("loss=".length()));
+            } else if (ary[i].startsWith("ack=")) {
+                ackEvery = Math.max(1, Integer.parseInt(ary[i].substring("ack=".length())));
+            } else if (ary[i].startsWith("ackdelay=")) {
+                ackDelay = Integer.parseInt(ary[i].substring("ackdelay=".length()));
+            }
+        }
+        UDPserver server = new UDPserver(Integer.parseInt(ary[0]), workers);
+        server.verbose = verbose;
+        server.dir = dir;
+        server.lossRate = loss;
+        server.ackEvery = ackEvery;
+        server.ackDelayMs = ackDelay;
+        server.start();
     }
 
     public UDPserver(int port) {
+        this(port, Runtime.getRuntime().availableProcessors());
+    }
+
+    public UDPserver(int port, int workers) {
         this.port = port;
+        this.workers = Math.max(1, workers);
     }
 
     public void start() throws Exception {
-        try (DatagramSocket socket = new DatagramSocket(port)) {
-            System.out.println("[启动] 服务器监听端口: " + port);
-            byte[] buffer = new byte[1024];
+        try (DatagramChannel ch = DatagramChannel.open();
+             Selector selector = Selector.open()) {
+            channel = ch;
+            ch.bind(new InetSocketAddress(port));
+            ch.setOption(StandardSocketOptions.SO_RCVBUF, 4 << 20);
+            ch.configureBlocking(false);
+            ch.register(selector, SelectionKey.OP_READ);
+            System.out.println("[启动] 服务器监听端口: " + port + ", 工作线程: " + workers
+                    + (ackEvery > 1 ? ", 每" + ackEvery + "段或" + ackDelayMs + "ms确认一次" : ""));
+
+            for (int i = 0; i < POOL_SIZE; i++) {
+                free.offer(new Datagram());
+            }
+            Worker[] pool = new Worker[workers];
+            for (int i = 0; i < workers; i++) {
+                pool[i] = new Worker();
+                Thread t = new Thread(pool[i], "udp-worker-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
 
+            ByteBuffer scratch = ByteBuffer.allocateDirect(Packetcodec.MAX_DATAGRAM);
             while (true) {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
+                selector.select();
+                selector.selectedKeys().clear();
+                // 一次就绪后把内核缓冲区中的包全部取完
+                while (true) {
+                    Datagram d = free.poll();
+                    ByteBuffer target = d != null ? d.buf : scratch;
+                    target.clear();
+                    SocketAddress from = ch.receive(target);
+                    if (from == null) {
+                        if (d != null) {
+                            free.offer(d);
+                        }
+                        break;
+                    }
+                    if (d == null) {
+                        continue; // 缓冲区池耗尽, 丢弃
+                    }
+                    target.flip();
+                    if (!parseHeader(d)) {
+                        free.offer(d); // 截断的数据报
+                        continue;
+                    }
+                    d.from = from;
+                    if (!pool[Math.floorMod(hash(from, d.connId), workers)].queue.offer(d)) {
+                        free.offer(d);
+                    }
+                }
+            }
+        }
+    }
 
-                PacketHeader header = parseHeader(packet.getData());
+    // 解析d.buf中的数据报头部并取出连接ID; 头部不完整或长度越界时返回false
+    static boolean parseHeader(Datagram d) {
+        if (!d.view.wrap(d.buf).valid()) {
+            return false;
+        }
+        d.connId = connectionId(d.view);
+        return true;
+    }
 
-                // 连接处理
-                if (header.type == 0) { // SYN
-                    handleSyn(socket, packet, header);
-                }
-                // 数据传输
-                else if (header.type == 3) { // DATA
-                    handleData(socket, packet, header);
-                }
+    // 从包头取出连接ID: SYN为其序列号, 握手ACK的序列号为ID+1, 数据包和FIN的确认号为ID
+    private static int connectionId(Packetcodec p) {
+        switch (p.type()) {
+            case Packetcodec.SYN: return p.seq();
+            case Packetcodec.ACK: return p.seq() - 1;
+            default: return p.ack();
+        }
+    }
+
+    private static int hash(SocketAddress address, int connId) {
+        return 31 * address.hashCode() + connId;
+    }
+
+    // 非阻塞发送; 发送缓冲区满时数据报被丢弃, 由客户端的重传兜底
+    private void send(ByteBuffer packet, SocketAddress to) throws Exception {
+        channel.send(packet, to);
+    }
+
+    private void log(Session s, String message) {
+        if (verbose) {
+            System.out.println("[会话 " + s.key + "] " + message);
+        }
+    }
+
+    // 缓冲区池中的一个数据报; I/O线程填充后交给工作线程, 处理完归还
+    static final class Datagram {
+        final ByteBuffer buf = ByteBuffer.allocateDirect(Packetcodec.MAX_DATAGRAM);
+        final Packetcodec view = new Packetcodec();
+        SocketAddress from;
+        int connId;
+    }
+
+    private static final class SessionKey {
+        SocketAddress address;
+        int connId;
+
+        SessionKey(SocketAddress address, int connId) {
+            this.address = address;
+            this.connId = connId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SessionKey)) {
+                return false;
             }
+            SessionKey k = (SessionKey) o;
+            return connId == k.connId && address.equals(k.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(address, connId);
+        }
+
+        @Override
+        public String toString() {
+            return address + "#" + connId;
         }
     }
 
-    // 处理SYN请求
-    private void handleSyn(DatagramSocket socket, DatagramPacket packet, PacketHeader header)
-            throws Exception {
-        System.out.println("[握手] 收到SYN, seq=" + header.seqNum);
-        clientSeq = header.seqNum;
+    private enum State { SYN_RCVD, ESTABLISHED }
+
+    // 单个连接的状态, 只被所属工作线程访问
+    private static final class Session {
+        final SessionKey key;
+        State state = State.SYN_RCVD;
+        int serverSeq;
+        boolean sackPermitted;
+        long expectedSeq = 0;   // 期望接收的字节偏移, 即已按序交付的字节数
+        final Reorder outOfOrder = new Reorder(); // 选择重传模式下缓存的乱序段
+        FileChannel out;        // 写入dir时的目标文件
+        Path path;
+        long lastActive = Timerwheel.nowMillis();
+        int unacked;            // 已按序收到但尚未确认的段数
+        final AckTimer ackTimer = new AckTimer(this); // 延迟确认定时器
 
-        // 发送SYN-ACK
-        int serverSeq = random.nextInt(10000);
-        byte[] synAck = createPacket(1, serverSeq, header.seqNum + 1, new byte[0]);
-        socket.send(new DatagramPacket(synAck, synAck.length,
-                packet.getAddress(), packet.getPort()));
+        Session(SessionKey key) {
+            this.key = key;
+        }
+    }
 
-        System.out.println("[握手] 发送SYN-ACK, seq=" + serverSeq + ", ack=" + (header.seqNum + 1));
+    // 延迟确认定时器, 到期时为所属会话补发累积确认
+    private static final class AckTimer extends Timerwheel.Timer {
+        final Session session;
 
-        // 等待ACK
-        byte[] buffer = new byte[1024];
-        DatagramPacket ackPacket = new DatagramPacket(buffer, buffer.length);
-        long startTime = System.currentTimeMillis();
+        AckTimer(Session session) {
+            super(0);
+            this.session = session;
+        }
+    }
 
-        while (System.currentTimeMillis() - startTime < 3000) {
-            try {
-                socket.receive(ackPacket);
-                PacketHeader ackHeader = parseHeader(ackPacket.getData());
+    private final class Worker implements Runnable {
+        final BlockingQueue<Datagram> queue = new ArrayBlockingQueue<>(POOL_SIZE);
+        final Map<SessionKey, Session> sessions = new HashMap<>();
+        final SessionKey probe = new SessionKey(null, 0); // 查找会话时复用的键
+        final ByteBuffer tx = ByteBuffer.allocateDirect(Packetcodec.MAX_DATAGRAM);
+        final Timerwheel wheel = new Timerwheel(1024, 1, Timerwheel.nowMillis()); // 本线程会话的延迟确认
+        final Timerwheel.Handler flush = t -> sendAck(((AckTimer) t).session, tx, wheel);
+        long lastSweep = Timerwheel.nowMillis();
 
-                if (ackHeader.type == 2 && ackHeader.ackNum == serverSeq + 1) {
-                    System.out.println("[握手] 连接建立完成");
-                    expectedSeq = 0; // 重置期望序列号
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    // 有延迟确认待发时最多等到它到期
+                    long delay = wheel.delayToNext(Timerwheel.nowMillis());
+                    Datagram d = queue.poll(delay < 0 ? 1000 : delay, TimeUnit.MILLISECONDS);
+                    if (d != null) {
+                        boolean retained = false;
+                        try {
+                            retained = dispatch(d);
+                        } finally {
+                            d.from = null;
+                            if (!retained) {
+                                free.offer(d);
+                            }
+                        }
+                    }
+                    wheel.advance(Timerwheel.nowMillis(), flush);
+                    sweep();
+                } catch (InterruptedException e) {
                     return;
+                } catch (Exception e) {
+                    System.out.println("[错误] " + e.getMessage());
+                }
+            }
+        }
+
+        // 处理一个数据报; 返回true表示它已作为乱序段留在会话中, 暂不归还缓冲区池
+        private boolean dispatch(Datagram d) throws Exception {
+            Packetcodec p = d.view;
+            probe.address = d.from;
+            probe.connId = d.connId;
+            Session s = sessions.get(probe);
+            if (p.type() == Packetcodec.SYN) {
+                if (s == null) {
+                    SessionKey key = new SessionKey(d.from, d.connId);
+                    s = new Session(key);
+                    sessions.put(key, s);
+                }
+                handleSyn(s, p, tx);
+            } else if (p.type() == Packetcodec.FIN) {
+                handleFin(s, d, tx);
+                if (s != null) {
+                    wheel.cancel(s.ackTimer);
+                    sessions.remove(s.key);
+                    s.outOfOrder.clear(free);
+                }
+                return false;
+            } else if (s == null) {
+                return false; // 未知连接的包直接丢弃
+            } else if (p.type() == Packetcodec.ACK) { // 握手ACK
+                handleAck(s, p);
+            } else if (p.type() == Packetcodec.DATA) {
+                s.lastActive = Timerwheel.nowMillis();
+                return handleData(s, d, tx, wheel);
+            }
+            s.lastActive = Timerwheel.nowMillis();
+            return false;
+        }
+
+        private void sweep() {
+            long now = Timerwheel.nowMillis();
+            if (now - lastSweep < 1000) {
+                return;
+            }
+            lastSweep = now;
+            Iterator<Session> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                Session s = it.next();
+                if (now - s.lastActive > SESSION_IDLE_MS) {
+                    it.remove();
+                    wheel.cancel(s.ackTimer);
+                    s.outOfOrder.clear(free);
+                    closeFile(s);
+                    log(s, "空闲超时, 已清理 (" + (s.state == State.SYN_RCVD ? "握手未完成" : "已接收 " + s.expectedSeq + " 字节") + ")");
                 }
-            } catch (SocketTimeoutException e) {
-                // 继续等待
             }
         }
-        System.out.println("[错误] ACK超时，连接未完成");
     }
 
-    // 处理数据包（实现随机丢包）
-    private void handleData(DatagramSocket socket, DatagramPacket packet, PacketHeader header) throws Exception {
+    // 处理SYN: 新连接分配服务器序列号; 重复的SYN说明SYN-ACK丢失, 原样重发
+    private void handleSyn(Session s, Packetcodec p, ByteBuffer tx) throws Exception {
+        if (s.state == State.ESTABLISHED) {
+            return;
+        }
+        boolean sack = (p.reserved() & Packetcodec.FLAG_SACK) != 0;
+        if (s.serverSeq == 0) {
+            log(s, "[握手] 收到SYN, seq=" + p.seq());
+            s.serverSeq = 1 + ThreadLocalRandom.current().nextInt(10000);
+            s.sackPermitted = sack;
+        }
+
+        // 发送SYN-ACK, 客户端请求选择确认时回显标志表示同意
+        int ack = p.seq() + 1;
+        Packetcodec.encode(tx, Packetcodec.SYN_ACK, s.serverSeq, ack, sack ? Packetcodec.FLAG_SACK : 0);
+        send(tx, s.key.address);
+        log(s, "[握手] 发送SYN-ACK, seq=" + s.serverSeq + ", ack=" + ack);
+    }
+
+    private void handleAck(Session s, Packetcodec p) throws Exception {
+        if (s.state == State.SYN_RCVD && p.ack() == s.serverSeq + 1) {
+            establish(s);
+            log(s, "[握手] 连接建立完成" + (s.sackPermitted ? " (选择重传)" : ""));
+        }
+    }
+
+    private void establish(Session s) throws Exception {
+        s.state = State.ESTABLISHED;
+        if (dir != null) {
+            String name = s.key.address.toString().replaceAll("[^0-9A-Za-z.]+", "_") + "_" + s.key.connId + ".bin";
+            s.path = dir.resolve(name);
+            s.out = FileChannel.open(s.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+    }
+
+    // 处理数据包（实现随机丢包）; 返回true表示d已缓存进乱序环
+    private boolean handleData(Session s, Datagram d, ByteBuffer tx, Timerwheel wheel) throws Exception {
+        Packetcodec p = d.view;
+        if (s.state == State.SYN_RCVD) {
+            // 握手ACK丢失时, 带正确连接ID的数据包同样说明客户端已完成握手
+            establish(s);
+            log(s, "[握手] 由数据包隐式完成连接建立");
+        }
+        long seq = Packetcodec.unwrap(p.seq(), s.expectedSeq);
+        int len = p.length();
         // 收包时立即模拟丢包（不进入后续处理）
-        if (random.nextDouble() < LOSS_RATE) {
-            int packetIdx = header.seqNum / 80;
-            System.out.println("[丢包] 模拟丢弃包 " + packetIdx + " (seq=" + header.seqNum + ")");
-            return; // 直接丢弃，不发送ACK
+        if (lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate) {
+            if (verbose) {
+                log(s, "[丢包] 模拟丢弃 seq=" + seq);
+            }
+            return false; // 直接丢弃，不发送ACK
+        }
+
+        // 乱序、重复或补上空洞的段需要立即确认, 让客户端尽快发现丢失; 其余按序段可以合并确认
+        boolean immediate = seq != s.expectedSeq || s.outOfOrder.count > 0;
+        if (len > s.outOfOrder.segSize) {
+            s.outOfOrder.resize(len, free);
+        }
+
+        // 按序到达处理: 载荷从接收缓冲区直接写盘
+        boolean retained = false;
+        if (seq == s.expectedSeq) {
+            deliver(s, d);
+            if (verbose) {
+                log(s, "[接收] seq=" + seq + " 已接收");
+            }
+            // 乱序环中与之衔接的段一并交付, 交付后归还缓冲区
+            Datagram next;
+            while ((next = s.outOfOrder.take(s.expectedSeq)) != null) {
+                if (verbose) {
+                    log(s, "[交付] 缓存段 seq=" + s.expectedSeq + " 已按序交付");
+                }
+                deliver(s, next);
+                free.offer(next);
+            }
+        } else if (s.sackPermitted && seq > s.expectedSeq && free.size() > POOL_RESERVE) {
+            // 乱序段连同所在缓冲区留到空洞补齐, 不复制载荷
+            retained = s.outOfOrder.put(seq, s.expectedSeq, d);
+            if (retained && verbose) {
+                log(s, "[缓存] 乱序段 seq=" + seq + " 已缓存");
+            }
+        }
+
+        if (!immediate && ++s.unacked < ackEvery) {
+            if (!s.ackTimer.scheduled()) {
+                wheel.schedule(s.ackTimer, ackDelayMs, Timerwheel.nowMillis());
+            }
+            return retained;
+        }
+        sendAck(s, tx, wheel);
+        return retained;
+    }
+
+    // 发送ACK（累积确认, 选择重传模式下数据部分附带SACK区间）—— 注意：丢包时不会执行到此
+    private void sendAck(Session s, ByteBuffer tx, Timerwheel wheel) throws Exception {
+        s.unacked = 0;
+        wheel.cancel(s.ackTimer);
+        createAck(tx, s.expectedSeq, s.outOfOrder, s.sackPermitted);
+        send(tx, s.key.address);
+    }
+
+    // 把确认到expectedSeq的ACK编码进tx, 保留字节通告剩余接收窗口; sack为真时附带乱序缓存的SACK区间
+    static void createAck(ByteBuffer tx, long expectedSeq, Reorder outOfOrder, boolean sack) {
+        int rwnd = Math.max(0, RECV_WINDOW - outOfOrder.count);
+        Packetcodec.begin(tx, Packetcodec.ACK, 0, (int) expectedSeq, rwnd);
+        if (sack && outOfOrder.count > 0) {
+            putSackBlocks(tx, expectedSeq, outOfOrder);
         }
+        Packetcodec.finish(tx);
+    }
 
-        // 按序到达处理
-        if (header.seqNum == expectedSeq) {
-            expectedSeq += header.dataLength;
-            System.out.println("[接收] 包 " + (header.seqNum / 80) + " 已接收");
+    // 把数据报的载荷按序交付: 写入文件并推进期望偏移
+    private static void deliver(Session s, Datagram d) throws Exception {
+        ByteBuffer data = d.buf;
+        int len = d.view.length();
+        data.position(Packetcodec.HEADER_SIZE).limit(Packetcodec.HEADER_SIZE + len);
+        if (s.out != null) {
+            while (data.hasRemaining()) {
+                s.out.write(data);
+            }
         }
+        s.expectedSeq += len;
+    }
 
-        // 发送ACK（累积确认）—— 注意：丢包时不会执行到此
-        byte[] ack = createPacket(2, 0, expectedSeq, new byte[0]);
-        socket.send(new DatagramPacket(ack, ack.length, packet.getAddress(), packet.getPort()));
+    // FIN在所有数据确认后发送: 关闭文件并回复FIN, 确认号为FIN序列号+1.
+    // 会话已清理时同样回复, 以便FIN应答丢失后客户端重发的FIN也能结束
+    private void handleFin(Session s, Datagram d, ByteBuffer tx) throws Exception {
+        if (s != null) {
+            closeFile(s);
+            System.out.println("[完成] 会话 " + s.key + " 接收 " + s.expectedSeq + " 字节"
+                    + (s.path != null ? ", 已写入 " + s.path : ""));
+        }
+        Packetcodec.encode(tx, Packetcodec.FIN, 0, d.view.seq() + 1, 0);
+        send(tx, d.from);
     }
 
-    private byte[] createPacket(int type, int seq, int ack, byte[] data) {
-        ByteBuffer buffer = ByteBuffer.allocate(12 + data.length);
-        buffer.put((byte) type);
-        buffer.putInt(seq);
-        buffer.putInt(ack);
-        buffer.putShort((short) data.length);
-        buffer.put(new byte[1]); // 保留字节
-        buffer.put(data);
-        return buffer.array();
+    private static void closeFile(Session s) {
+        if (s.out != null) {
+            try {
+                s.out.close();
+            } catch (Exception e) {
+                System.out.println("[错误] 关闭文件失败: " + e.getMessage());
+            }
+            s.out = null;
+        }
     }
 
-    private PacketHeader parseHeader(byte[] data) {
-        ByteBuffer buffer = ByteBuffer.wrap(data);
-        PacketHeader header = new PacketHeader();
-        header.type = buffer.get();
-        header.seqNum = buffer.getInt();
-        header.ackNum = buffer.getInt();
-        header.dataLength = buffer.getShort();
-        buffer.get(); // 跳过保留字节
-        return header;
+    // 从expectedSeq之后逐槽扫描乱序环, 合并成至多MAX_SACK个 [起始, 结束) 区间写入tx, 每个区间8字节, 偏移取低32位
+    private static void putSackBlocks(ByteBuffer tx, long expectedSeq, Reorder outOfOrder) {
+        int blocks = 0;
+        int seen = 0;
+        long start = -1;
+        long end = -1;
+        for (int k = 1; k < RECV_WINDOW && seen < outOfOrder.count; k++) {
+            long seq = expectedSeq + (long) k * outOfOrder.segSize;
+            Datagram d = outOfOrder.get(seq);
+            if (d == null) {
+                continue;
+            }
+            seen++;
+            if (seq == end) {
+                end += d.view.length();
+                continue;
+            }
+            if (start >= 0) {
+                tx.putInt((int) start).putInt((int) end);
+                if (++blocks == Packetcodec.MAX_SACK) {
+                    return;
+                }
+            }
+            start = seq;
+            end = start + d.view.length();
+        }
+        if (start >= 0) {
+            tx.putInt((int) start).putInt((int) end);
+        }
     }
 
-    static class PacketHeader {
-        byte type;
-        int seqNum;
-        int ackNum;
-        short dataLength;
+    // 乱序环: RECV_WINDOW个槽按段号 (偏移/段长) 取模索引, 槽中直接存放池中的数据报.
+    // 客户端除最后一包外按固定段长对齐发送, 段长取已收数据包载荷长度的最大值
+    static final class Reorder {
+        final Datagram[] slots = new Datagram[RECV_WINDOW];
+        int segSize;
+        int count;
+
+        private int slot(long seq) {
+            return (int) ((seq / segSize) % RECV_WINDOW);
+        }
+
+        // 偏移为seq的缓存段, 没有时返回null
+        Datagram get(long seq) {
+            if (count == 0 || segSize == 0 || seq % segSize != 0) {
+                return null;
+            }
+            Datagram d = slots[slot(seq)];
+            return d != null && d.view.seq() == (int) seq ? d : null;
+        }
+
+        // 缓存偏移为seq的乱序段; 未对齐、超出窗口或重复时返回false, 由调用方归还d
+        boolean put(long seq, long expectedSeq, Datagram d) {
+            if (segSize == 0 || seq % segSize != 0 || seq - expectedSeq >= (long) RECV_WINDOW * segSize) {
+                return false;
+            }
+            int i = slot(seq);
+            if (slots[i] != null) {
+                return false;
+            }
+            slots[i] = d;
+            count++;
+            return true;
+        }
+
+        // 取出偏移为seq的缓存段
+        Datagram take(long seq) {
+            Datagram d = get(seq);
+            if (d != null) {
+                slots[slot(seq)] = null;
+                count--;
+            }
+            return d;
+        }
+
+        // 段长变大说明先到的是最后一个短包, 旧索引失效: 清空后按新段长重新缓存
+        void resize(int newSegSize, Queue<Datagram> free) {
+            clear(free);
+            segSize = newSegSize;
+        }
+
+        // 把缓存的数据报全部归还缓冲区池
+        void clear(Queue<Datagram> free) {
+            for (int i = 0; i < slots.length && count > 0; i++) {
+                if (slots[i] != null) {
+                    free.offer(slots[i]);
+                    slots[i] = null;
+                    count--;
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
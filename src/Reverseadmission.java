@@ -0,0 +1,138 @@
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 反转服务器的准入控制, Reversetcpserver 与 Reversenioserver 共用.
+ * Reversetcpserver 在accept后、分配处理线程前申请名额, Reversenioserver 在收到Initialization时申请:
+ * 名额已满时最多queue个连接排队等待queueWait毫秒; 有连接在排队时新连接不插队, 排到队尾,
+ * 队列已满或等待超时则回复Busy (类型8 + 建议重试间隔毫秒) 并关闭, 而不是继续占用线程和内存.
+ * 已准入的连接读入每块数据前还要从全局在途字节预算中申请该块长度, 写出应答后归还;
+ * 预算不足时暂停读取该连接, 由TCP流控把压力传回客户端. 各项限制为0表示不限.
+ */
+public class Reverseadmission {
+    static final short BUSY = 8;
+
+    private final Semaphore connections; // 为null表示不限连接数
+    private final int maxQueue;
+    private final long queueWaitMillis;
+    private final Semaphore bytes;       // 为null表示不限在途字节
+    private final int maxBytes;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public Reverseadmission(int maxConnections, int maxQueue, long queueWaitMillis, long maxInflightBytes) {
+        this.connections = maxConnections > 0 ? new Semaphore(maxConnections, true) : null;
+        this.maxQueue = Math.max(0, maxQueue);
+        this.queueWaitMillis = Math.max(0, queueWaitMillis);
+        this.maxBytes = (int) Math.min(Integer.MAX_VALUE, Math.max(0, maxInflightBytes));
+        this.bytes = maxBytes > 0 ? new Semaphore(maxBytes, true) : null;
+    }
+
+    // 不做任何限制
+    public static Reverseadmission unlimited() {
+        return new Reverseadmission(0, 0, 0, 0);
+    }
+
+    // 新连接的非阻塞准入: 已有连接在排队或在信号量上等待, 且空闲名额不多于等待者时不插队,
+    // 返回false由调用方排到队尾; 空闲名额多于等待者时拿走一个不会让任何等待者多等
+    public boolean tryAdmit() {
+        if (connections == null) {
+            return true;
+        }
+        int waiting = Math.max(queued.get(), connections.getQueueLength());
+        if (waiting > 0 && connections.availablePermits() <= waiting) {
+            return false;
+        }
+        return acquireNow();
+    }
+
+    // 已占用排队位置的连接非阻塞申请名额, 供Reactor线程按到达顺序轮询
+    public boolean tryAdmitQueued() {
+        return connections == null || acquireNow();
+    }
+
+    // 无参的tryAcquire()不理会公平设置, 会越过在信号量上等待的线程; 零超时的tryAcquire按公平顺序
+    private boolean acquireNow() {
+        try {
+            return connections.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // 占用一个排队位置, 队列已满返回false
+    public boolean enterQueue() {
+        while (true) {
+            int q = queued.get();
+            if (q >= maxQueue) {
+                return false;
+            }
+            if (queued.compareAndSet(q, q + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void leaveQueue() {
+        queued.decrementAndGet();
+    }
+
+    // 已占用排队位置的连接阻塞等待名额, 最多queueWait毫秒; 无论结果如何都让出排队位置
+    public boolean awaitQueued() throws InterruptedException {
+        try {
+            return connections == null || connections.tryAcquire(queueWaitMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            leaveQueue();
+        }
+    }
+
+    // 已准入的连接结束时归还名额
+    public void release() {
+        if (connections != null) {
+            connections.release();
+        }
+    }
+
+    // 阻塞申请n字节在途预算; 超过预算上限的块按上限申请, 即独占全部预算, 返回实际申请的字节数
+    public int acquireBytes(int n) throws InterruptedException {
+        if (bytes == null) {
+            return 0;
+        }
+        int permits = Math.min(n, maxBytes);
+        bytes.acquire(permits);
+        return permits;
+    }
+
+    // 非阻塞申请, 失败返回-1
+    public int tryAcquireBytes(int n) {
+        if (bytes == null) {
+            return 0;
+        }
+        int permits = Math.min(n, maxBytes);
+        return bytes.tryAcquire(permits) ? permits : -1;
+    }
+
+    public void releaseBytes(int permits) {
+        if (bytes != null && permits > 0) {
+            bytes.release(permits);
+        }
+    }
+
+    public long queueWaitMillis() {
+        return queueWaitMillis;
+    }
+
+    // Busy响应中建议的重试间隔: 排队等待时长, 至少100ms
+    public int retryAfterMillis() {
+        return (int) Math.max(100, Math.min(Integer.MAX_VALUE, queueWaitMillis));
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getInflightBytes() {
+        return bytes == null ? 0 : maxBytes - bytes.availablePermits();
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reversetcpserver 的压测工具: 并发运行多个模拟 Reversetcpclient 会话,
+ * 统计每块的往返延迟分位数、块/秒和MB/秒, 最后输出一行JSON汇总便于比较不同服务器模式和提交.
+ */
+public class Reverseloadgen {
+    private final String host;
+    private final int port;
+    private int sessions = 100;        // 并发会话数
+    private int blocks = 100;          // 每个会话的块数
+    private int durationSeconds = 0;   // 大于0时各会话循环重连直到时间用完
+    private String dist = "uniform:64:1024"; // 块长分布: fixed:N / uniform:MIN:MAX / exp:MEAN / loguniform:MIN:MAX
+    private String label = "";
+    private String distKind;
+    private int distA;
+    private int distB;
+    private int maxLength;
+
+    private final Latencyhistogram latency = new Latencyhistogram(); // 微秒
+    private final AtomicLong blockCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong(); // 服务器回复Busy的次数
+
+    public Reverseloadgen(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("请输入IP,PORT,以空格隔开,回车表示确认.");
+        System.out.println("可选参数: sessions=N blocks=N duration=秒 label=名称");
+        System.out.println("         dist=fixed:N|uniform:MIN:MAX|exp:MEAN|loguniform:MIN:MAX (loguniform:64:1048576 覆盖小块和大块)");
+        Scanner sc = new Scanner(System.in);
+        String[] message = sc.nextLine().trim().split("( +)");
+        Reverseloadgen gen = new Reverseloadgen(message[0], Integer.parseInt(message[1]));
+        for (int i = 2; i < message.length; i++) {
+            String[] kv = message[i].split("=", 2);
+            switch (kv[0]) {
+                case "sessions": gen.sessions = Integer.parseInt(kv[1]); break;
+                case "blocks": gen.blocks = Integer.parseInt(kv[1]); break;
+                case "duration": gen.durationSeconds = Integer.parseInt(kv[1]); break;
+                case "dist": gen.dist = kv[1]; break;
+                case "label": gen.label = kv[1]; break;
+                default: throw new IllegalArgumentException("未知参数: " + message[i]);
+            }
+        }
+        gen.run();
+    }
+
+    public void run() throws InterruptedException {
+        parseDist();
+        byte[] payload = new byte[maxLength];
+        Random rand = new Random(1);
+        for (int i = 0; i < maxLength; i++) {
+            payload[i] = (byte) (' ' + rand.nextInt(95));
+        }
+        long deadline = durationSeconds > 0 ? System.nanoTime() + durationSeconds * 1_000_000_000L : 0;
+        CountDownLatch done = new CountDownLatch(sessions);
+        long start = System.nanoTime();
+        for (int s = 0; s < sessions; s++) {
+            long seed = s;
+            Thread t = new Thread(() -> {
+                Random r = new Random(seed);
+                try {
+                    // 会话失败后不再重连, 避免服务器不可用时空转
+                    while (session(payload, r) && deadline != 0 && System.nanoTime() < deadline) {
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "session-" + s);
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+        report(System.nanoTime() - start);
+    }
+
+    // 服务器回复Busy时按建议间隔等待后重连, 不计为失败.
+    // 每个应答都核对类型、长度和内容, 不一致时该会话按失败计, 不把错误的应答计入吞吐
+    private boolean session(byte[] payload, Random rand) {
+        while (true) {
+            int retryAfter;
+            try (Socket socket = new Socket(host, port)) {
+                // 超过缓冲区的块会分成头部和数据两次写出, 关闭Nagle以免头部等待延迟确认
+                socket.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out.writeShort(1);
+                out.writeInt(blocks);
+                out.flush();
+                if (in.readShort() == 8) { // Busy
+                    retryAfter = in.readInt();
+                    rejected.incrementAndGet();
+                } else {
+                    byte[] answer = new byte[payload.length];
+                    for (int i = 0; i < blocks; i++) {
+                        int len = nextLength(rand);
+                        long t0 = System.nanoTime();
+                        out.writeShort(3);
+                        out.writeInt(len);
+                        out.write(payload, 0, len);
+                        out.flush();
+                        short type = in.readShort();
+                        int got = in.readInt();
+                        if (type != 4 || got != len) {
+                            throw new IOException("应答不匹配: 类型 " + type + ", 长度 " + got + ", 应为 " + len);
+                        }
+                        in.readFully(answer, 0, got);
+                        latency.record((System.nanoTime() - t0) / 1000);
+                        for (int j = 0; j < len; j++) {
+                            if (answer[j] != payload[len - 1 - j]) {
+                                throw new IOException("应答内容错误, 长度 " + len + ", 偏移 " + j);
+                            }
+                        }
+                        blockCount.incrementAndGet();
+                        byteCount.addAndGet(len);
+                    }
+                    return true;
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+                return false;
+            }
+            try {
+                Thread.sleep(retryAfter);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private int nextLength(Random rand) {
+        switch (distKind) {
+            case "fixed":
+                return distA;
+            case "exp":
+                return (int) Math.min(maxLength, Math.max(1, Math.round(-distA * Math.log(1 - rand.nextDouble()))));
+            case "loguniform":
+                return (int) Math.min(distB, Math.round(distA * Math.pow((double) distB / distA, rand.nextDouble())));
+            default:
+                return distA + rand.nextInt(distB - distA + 1);
+        }
+    }
+
+    // 解析块长分布, 指数分布截断在均值的8倍
+    private void parseDist() {
+        String[] p = dist.split(":");
+        distKind = p[0];
+        distA = Integer.parseInt(p[1]);
+        switch (distKind) {
+            case "fixed": maxLength = distA; break;
+            case "exp": maxLength = distA * 8; break;
+            case "uniform": distB = Integer.parseInt(p[2]); maxLength = distB; break;
+            case "loguniform":
+                distB = Integer.parseInt(p[2]);
+                if (distA < 1 || distB < distA) {
+                    throw new IllegalArgumentException("loguniform 需要 1 <= MIN <= MAX: " + dist);
+                }
+                maxLength = distB;
+                break;
+            default: throw new IllegalArgumentException("未知的块长分布: " + dist);
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        double blocksPerSec = blockCount.get() / seconds;
+        double mbPerSec = byteCount.get() / seconds / (1 << 20);
+        System.out.println("\n===== 压测结果 =====");
+        System.out.printf("会话数: %d, 每会话块数: %d, 块长分布: %s%n", sessions, blocks, dist);
+        System.out.printf("耗时: %.2fs, 完成块数: %d, 失败会话: %d, 被拒绝: %d%n", seconds, blockCount.get(),
+                errors.get(), rejected.get());
+        System.out.printf("吞吐: %.0f 块/秒, %.2f MB/s%n", blocksPerSec, mbPerSec);
+        System.out.printf("延迟(us): p50=%d p99=%d p999=%d max=%d 平均=%.1f%n",
+                latency.valueAtQuantile(0.5), latency.valueAtQuantile(0.99),
+                latency.valueAtQuantile(0.999), latency.max(), latency.mean());
+        System.out.println(String.format(Locale.ROOT,
+                "{\"label\":\"%s\",\"sessions\":%d,\"blocksPerSession\":%d,\"dist\":\"%s\",\"seconds\":%.3f,"
+                        + "\"blocks\":%d,\"errors\":%d,\"rejected\":%d,\"blocksPerSec\":%.1f,\"mbPerSec\":%.3f,"
+                        + "\"p50us\":%d,\"p99us\":%d,\"p999us\":%d,\"maxus\":%d}",
+                json(label), sessions, blocks, json(dist), seconds, blockCount.get(), errors.get(), rejected.get(), blocksPerSec,
+                mbPerSec,
+                latency.valueAtQuantile(0.5), latency.valueAtQuantile(0.99), latency.valueAtQuantile(0.999),
+                latency.max()));
+    }
+
+    // JSON字符串转义
+    static String json(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
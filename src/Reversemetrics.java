@@ -0,0 +1,216 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 反转服务器的运行指标: 连接数、块数、收发字节和每块服务时间直方图.
+ * 计数使用LongAdder, 记录一块只需几次无竞争的累加; 通过JMX导出, 并可定期打印一行汇总.
+ */
+public class Reversemetrics implements ReversemetricsMBean {
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rejected = new LongAdder(); // 握手时回复Busy的连接
+    private final LongAdder timedOut = new LongAdder(); // 读写超时被断开的连接
+    private final Latencyhistogram serviceTime = new Latencyhistogram();  // 启动以来
+    // 本统计周期; 周期结束时换上新直方图再读旧的, 不与并发的record竞争reset
+    private final AtomicReference<Latencyhistogram> intervalTime =
+            new AtomicReference<>(new Latencyhistogram());
+
+    // JMX读取速率时的上一个采样点, 距上次采样不足1秒时返回上次的结果
+    private long rateNanos = System.nanoTime();
+    private long rateBlocks;
+    private double blocksPerSecond;
+    private ObjectName name;
+    private ScheduledExecutorService reporter;
+
+    public void connectionOpened() {
+        active.incrementAndGet();
+        connections.increment();
+    }
+
+    public void connectionClosed() {
+        active.decrementAndGet();
+    }
+
+    public void bytesIn(long n) {
+        bytesIn.add(n);
+    }
+
+    public void bytesOut(long n) {
+        bytesOut.add(n);
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    public void rejected() {
+        rejected.increment();
+    }
+
+    public void timedOut() {
+        timedOut.increment();
+    }
+
+    // 一块处理完成, nanos为从数据块读完到应答写出的服务时间
+    public void block(long nanos) {
+        blocks.increment();
+        serviceTime.record(nanos);
+        intervalTime.get().record(nanos);
+    }
+
+    // 以 Reversetcp:type=Server,port=端口 注册MBean; intervalSeconds大于0时定期打印汇总行
+    public synchronized void start(int port, int intervalSeconds) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            name = new ObjectName("Reversetcp:type=Server,port=" + port);
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("注册JMX指标失败: " + e.getMessage());
+            name = null;
+        }
+        if (intervalSeconds > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-reporter");
+                t.setDaemon(true);
+                return t;
+            });
+            reporter.scheduleAtFixedRate(new Summary(intervalSeconds),
+                    intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                System.err.println("注销JMX指标失败: " + e.getMessage());
+            }
+            name = null;
+        }
+    }
+
+    // 每个周期打印一行汇总, 速率按与上一周期的差值计算
+    private final class Summary implements Runnable {
+        private final int intervalSeconds;
+        private long lastBlocks;
+        private long lastIn;
+        private long lastOut;
+
+        Summary(int intervalSeconds) {
+            this.intervalSeconds = intervalSeconds;
+        }
+
+        @Override
+        public void run() {
+            long b = blocks.sum();
+            long in = bytesIn.sum();
+            long out = bytesOut.sum();
+            Latencyhistogram interval = intervalTime.getAndSet(new Latencyhistogram());
+            System.out.printf("[统计] 活跃连接 %d, %.0f 块/秒, 入 %.2f MB/s, 出 %.2f MB/s, "
+                            + "服务时间(us) p50=%.1f p99=%.1f p999=%.1f, 错误 %d, 拒绝 %d, 超时 %d%n",
+                    active.get(), (double) (b - lastBlocks) / intervalSeconds,
+                    (in - lastIn) / (double) intervalSeconds / (1 << 20),
+                    (out - lastOut) / (double) intervalSeconds / (1 << 20),
+                    interval.valueAtQuantile(0.5) / 1e3, interval.valueAtQuantile(0.99) / 1e3,
+                    interval.valueAtQuantile(0.999) / 1e3, errors.sum(), rejected.sum(), timedOut.sum());
+            lastBlocks = b;
+            lastIn = in;
+            lastOut = out;
+        }
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    @Override
+    public long getTotalConnections() {
+        return connections.sum();
+    }
+
+    @Override
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getTimedOutConnections() {
+        return timedOut.sum();
+    }
+
+    // 读取时按与上一采样点的差值计算, 不依赖定期汇总是否开启
+    @Override
+    public synchronized double getBlocksPerSecond() {
+        long now = System.nanoTime();
+        if (now - rateNanos >= TimeUnit.SECONDS.toNanos(1)) {
+            long b = blocks.sum();
+            blocksPerSecond = (b - rateBlocks) * 1e9 / (now - rateNanos);
+            rateNanos = now;
+            rateBlocks = b;
+        }
+        return blocksPerSecond;
+    }
+
+    @Override
+    public long getServiceTimeP50Nanos() {
+        return serviceTime.valueAtQuantile(0.5);
+    }
+
+    @Override
+    public long getServiceTimeP99Nanos() {
+        return serviceTime.valueAtQuantile(0.99);
+    }
+
+    @Override
+    public long getServiceTimeP999Nanos() {
+        return serviceTime.valueAtQuantile(0.999);
+    }
+
+    @Override
+    public long getServiceTimeMaxNanos() {
+        return serviceTime.max();
+    }
+
+    @Override
+    public double getServiceTimeMeanNanos() {
+        return serviceTime.mean();
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * 反转服务器的JMX监控接口, 时间单位为纳秒.
+ */
+public interface ReversemetricsMBean {
+    int getActiveConnections();
+
+    long getTotalConnections();
+
+    long getBlocks();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getErrors();
+
+    long getRejectedConnections();
+
+    long getTimedOutConnections();
+
+    double getBlocksPerSecond();
+
+    long getServiceTimeP50Nanos();
+
+    long getServiceTimeP99Nanos();
+
+    long getServiceTimeP999Nanos();
+
+    long getServiceTimeMaxNanos();
+
+    double getServiceTimeMeanNanos();
+}
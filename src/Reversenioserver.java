@@ -0,0 +1,652 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Selector 的非阻塞反转服务器: 一个接收线程 + 每核一个 Reactor.
+ * 报文格式与 Reversetcpserver 完全一致 (类型1~4, 批量类型5~7, 繁忙类型8), 按连接缓冲增量解析.
+ * 准入排队和在途字节预算不足时不阻塞Reactor: 连接挂起并停止读取, 由Reactor以短超时轮询重试;
+ * 读写停滞超时由Reactor定期扫描全部连接检查.
+ * 超过大块阈值的块不进读缓冲: 边到达边写入临时文件, 读完后从文件尾部倒序分段读出、反转后发送,
+ * 每个连接的堆占用不随块长增长.
+ */
+public class Reversenioserver {
+    private static final int STATE_INIT = 0;   // 等待Initialization (类型1 + 块数N)
+    private static final int STATE_HEADER = 1; // 等待ReverseRequest头部 (类型3 + len)
+    private static final int STATE_BODY = 2;   // 等待数据块
+    private static final int STATE_DONE = 3;   // 全部块已处理, 发送完毕后关闭
+    private static final int STATE_BATCH_HEADER = 4; // 等待BatchRequest头部 (类型6 + 本批块数)
+    private static final int STATE_BATCH_LEN = 5;    // 等待批内下一块的长度
+    private static final int STATE_QUEUED = 6;       // 已收到Initialization, 排队等待连接名额
+    private static final int STATE_SPILL = 7;        // 大块: 数据写入溢出文件
+    private static final int STATE_SPILL_OUT = 8;    // 大块: 从溢出文件倒序读出并反转发送
+
+    private static final int INITIAL_BUFFER = 8192;
+    private static final int MAX_PENDING_OUT = 1 << 20; // 待发送超过1MB时暂停读取
+    private static final long RETRY_MILLIS = 10;        // 有连接排队或等待预算时的轮询间隔
+
+    private final int port;
+    private final int reactorCount;
+    private final Reversemetrics metrics = new Reversemetrics();
+    private volatile int logEvery = 1;      // 每N块打印一次处理日志, 0表示不打印
+    private volatile int statsInterval = 0; // 汇总行的打印间隔(秒), 0表示不打印
+    // 超过此长度的块溢出到临时文件, 0表示关闭
+    private volatile long largeBlockThreshold = (long) Reversetcpserver.DEFAULT_LARGE_BLOCK_MB << 20;
+    private volatile Reverseadmission admission = Reverseadmission.unlimited();
+    private volatile int readTimeoutMillis = Reversetcpserver.DEFAULT_TIMEOUT_MS;  // 0表示不限
+    private volatile int writeTimeoutMillis = Reversetcpserver.DEFAULT_TIMEOUT_MS; // 0表示不限
+
+    public Reversenioserver(int port) {
+        this(port, Runtime.getRuntime().availableProcessors());
+    }
+
+    public Reversenioserver(int port, int reactorCount) {
+        this.port = port;
+        this.reactorCount = Math.max(1, reactorCount);
+    }
+
+    public void setLogEvery(int logEvery) {
+        this.logEvery = logEvery;
+    }
+
+    public void setStatsInterval(int statsInterval) {
+        this.statsInterval = statsInterval;
+    }
+
+    public void setLargeBlockThreshold(long bytes) {
+        this.largeBlockThreshold = bytes;
+    }
+
+    public void setAdmission(Reverseadmission admission) {
+        this.admission = admission;
+    }
+
+    public void setTimeouts(int readTimeoutMillis, int writeTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    public Reversemetrics getMetrics() {
+        return metrics;
+    }
+
+    public void start() throws IOException {
+        Reactor[] reactors = new Reactor[reactorCount];
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor(Selector.open());
+            Thread t = new Thread(reactors[i], "reactor-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port), Reversetcpserver.BACKLOG);
+            int bound = serverChannel.socket().getLocalPort(); // port为0时由系统分配
+            System.out.println("服务器启动(NIO, " + reactorCount + "个Reactor), 监听端口: " + bound);
+            metrics.start(bound, statsInterval);
+            int next = 0;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                reactors[next].register(channel);
+                next = (next + 1) % reactorCount;
+            }
+        } finally {
+            for (Reactor reactor : reactors) {
+                reactor.selector.close();
+            }
+            metrics.stop();
+        }
+    }
+
+    private final class Reactor implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final ArrayDeque<Connection> queued = new ArrayDeque<>(); // 排队等待名额, 按到达顺序
+        private List<Connection> starved = new ArrayList<>();             // 等待在途字节预算
+        private List<Connection> spilling = new ArrayList<>();            // 读缓冲中还有待写入溢出文件的数据
+
+        Reactor(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            // 停滞检查的周期取较小超时的1/4, 两项都不限时不检查
+            int timeout = Math.min(positiveOrMax(readTimeoutMillis), positiveOrMax(writeTimeoutMillis));
+            long scanMillis = timeout == Integer.MAX_VALUE ? 0 : Math.max(100, timeout / 4);
+            long nextScan = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(scanMillis);
+            try {
+                while (selector.isOpen()) {
+                    // 有待续写的溢出数据时不阻塞, 每轮为每个连接写一段, 与其他连接的读写交替进行
+                    if (!spilling.isEmpty()) {
+                        selector.selectNow();
+                    } else {
+                        selector.select(queued.isEmpty() && starved.isEmpty() ? scanMillis : RETRY_MILLIS);
+                    }
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        Connection conn = new Connection(this, channel);
+                        metrics.connectionOpened();
+                        conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+                    }
+                    // 先为排队的连接分配名额, 再处理本轮新到的Initialization, 新连接不会抢在排队者之前
+                    if (!queued.isEmpty()) {
+                        retryQueued();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection conn = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                conn.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                conn.onWritable();
+                            }
+                        } catch (IOException e) {
+                            fail(conn, e);
+                        }
+                    }
+                    if (!starved.isEmpty()) {
+                        retryStarved();
+                    }
+                    if (!spilling.isEmpty()) {
+                        continueSpill();
+                    }
+                    long now = System.nanoTime();
+                    if (scanMillis > 0 && now - nextScan >= 0) {
+                        evictStalled(now);
+                        nextScan = now + TimeUnit.MILLISECONDS.toNanos(scanMillis);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                // 服务器关闭
+            }
+        }
+
+        // 按到达顺序为排队的连接申请名额, 排在前面的拿不到名额时后面的也不尝试, 等待超时的回复Busy
+        private void retryQueued() {
+            long now = System.nanoTime();
+            while (!queued.isEmpty()) {
+                Connection conn = queued.peek();
+                if (!conn.closed) {
+                    boolean admitted = admission.tryAdmitQueued();
+                    if (!admitted && now - conn.queueDeadline < 0) {
+                        return;
+                    }
+                    admission.leaveQueue();
+                    try {
+                        conn.dequeued(admitted);
+                    } catch (IOException e) {
+                        fail(conn, e);
+                    }
+                }
+                queued.poll();
+            }
+        }
+
+        private void retryStarved() {
+            List<Connection> retry = starved;
+            starved = new ArrayList<>();
+            for (Connection conn : retry) {
+                if (!conn.closed) {
+                    try {
+                        conn.resume();
+                    } catch (IOException e) {
+                        fail(conn, e);
+                    }
+                }
+            }
+        }
+
+        private void continueSpill() {
+            List<Connection> retry = spilling;
+            spilling = new ArrayList<>();
+            for (Connection conn : retry) {
+                conn.spillPending = false;
+                if (!conn.closed) {
+                    try {
+                        conn.process();
+                    } catch (IOException e) {
+                        fail(conn, e);
+                    }
+                }
+            }
+        }
+
+        private void evictStalled(long now) {
+            for (SelectionKey key : selector.keys()) {
+                Connection conn = (Connection) key.attachment();
+                if (conn != null && !conn.closed && conn.isStalled(now)) {
+                    metrics.timedOut();
+                    System.err.println("客户端" + (conn.writeSince != 0 ? "写" : "读") + "超时, 已断开: "
+                            + conn.channel.socket().getRemoteSocketAddress());
+                    conn.close();
+                }
+            }
+        }
+
+        private void fail(Connection conn, IOException e) {
+            metrics.error();
+            System.err.println("客户端处理错误: " + e.getMessage());
+            conn.close();
+        }
+    }
+
+    private static int positiveOrMax(int millis) {
+        return millis > 0 ? millis : Integer.MAX_VALUE;
+    }
+
+    private final class Connection {
+        private final Reactor reactor;
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);  // 写模式
+        private ByteBuffer out = ByteBuffer.allocate(INITIAL_BUFFER); // 写模式, 发送时翻转
+        private int state = STATE_INIT;
+        private int nBlocks;
+        private int blockIndex;
+        private int blockLen;
+        private int batch;          // 协商的每批块数, 0表示逐块模式
+        private int batchRemaining; // 当前批次中尚未读到的块数
+        private boolean closed;
+        private boolean admitted;    // 占有连接名额, 关闭时归还
+        private long queueDeadline;  // 排队等待的截止时刻(nanoTime)
+        private int bodyPermits = -1; // 当前块占用的在途字节预算, -1表示尚未申请
+        private int outPermits;      // 已写入out尚未发完的块占用的预算, out发空时归还
+        private boolean starved;     // 预算不足, 暂停读取
+        private long lastRead;       // 最近一次读到数据的时刻
+        private long writeSince;     // out中有待发数据且写无进展的起始时刻, 0表示没有待发数据
+        private FileChannel spill;   // 大块的溢出文件, 关闭即删除
+        private long spillPos;       // 写入时为已写入的字节数, 发送时为尚未发送的前缀长度
+        private long spillNanos;     // 大块的反转耗时
+        private boolean spillPending; // 已在Reactor的spilling列表中, 本轮不再另行写入
+
+        Connection(Reactor reactor, SocketChannel channel) {
+            this.reactor = reactor;
+            this.channel = channel;
+            this.lastRead = System.nanoTime();
+        }
+
+        void onReadable() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            if (n > 0) {
+                lastRead = System.nanoTime();
+            }
+            if (!spillPending) {
+                process();
+            }
+        }
+
+        // 解析读缓冲并发送应答
+        private void process() throws IOException {
+            in.flip();
+            boolean ok = parse();
+            in.compact();
+            if (!ok) {
+                metrics.error();
+                close();
+                return;
+            }
+            if (state == STATE_BODY && !starved && blockLen > in.capacity()) {
+                in = grow(in, blockLen);
+            } else if (state == STATE_SPILL && in.capacity() < Reversetcpserver.SPILL_CHUNK) {
+                in = grow(in, Reversetcpserver.SPILL_CHUNK);
+            }
+            flush();
+        }
+
+        // 排队结束: 拿到名额则回复Agree并继续处理, 否则回复Busy
+        void dequeued(boolean admitted) throws IOException {
+            if (admitted) {
+                lastRead = System.nanoTime();
+                agree();
+                process();
+            } else {
+                busy();
+                flush();
+            }
+        }
+
+        // 预算可能已归还, 重新解析; 仍不足时parse会再次挂起
+        void resume() throws IOException {
+            starved = false;
+            lastRead = System.nanoTime(); // 等待预算的时间不计入读超时
+            process();
+        }
+
+        boolean isStalled(long now) {
+            if (writeSince != 0) {
+                return writeTimeoutMillis > 0 && now - writeSince > TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+            }
+            if (state == STATE_QUEUED || state == STATE_DONE || state == STATE_SPILL_OUT || starved) {
+                return false;
+            }
+            return readTimeoutMillis > 0 && now - lastRead > TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+        }
+
+        void onWritable() throws IOException {
+            flush();
+            if (state == STATE_SPILL_OUT && !closed) {
+                process(); // 继续从溢出文件取下一段
+            }
+        }
+
+        // 从读缓冲中解析尽可能多的完整报文, 返回false表示协议错误
+        private boolean parse() throws IOException {
+            while (true) {
+                switch (state) {
+                    case STATE_INIT: {
+                        if (in.remaining() < 6) return true;
+                        short type = in.getShort(in.position());
+                        if (type != 1 && type != 5) {
+                            System.err.println("无效的初始化类型: " + type);
+                            return false;
+                        }
+                        if (type == 5 && in.remaining() < 10) return true;
+                        in.getShort();
+                        nBlocks = in.getInt();
+                        if (type == 5) {
+                            batch = Math.max(1, Math.min(in.getInt(), Reversetcpserver.MAX_BATCH));
+                        }
+                        metrics.bytesIn(type == 5 ? 10 : 6);
+                        if (admission.tryAdmit()) {
+                            agree();
+                            break;
+                        }
+                        // 名额已满或已有连接在排队: 队列未满时排到队尾等待Reactor重试, 否则立即回复Busy
+                        if (admission.enterQueue()) {
+                            state = STATE_QUEUED;
+                            queueDeadline = System.nanoTime()
+                                    + TimeUnit.MILLISECONDS.toNanos(admission.queueWaitMillis());
+                            reactor.queued.add(this);
+                        } else {
+                            busy();
+                        }
+                        return true;
+                    }
+                    case STATE_BATCH_HEADER: {
+                        if (in.remaining() < 6) return true;
+                        short reqType = in.getShort();
+                        int count = in.getInt();
+                        if (reqType != 6 || count <= 0 || count > batch || count > nBlocks - blockIndex) {
+                            System.err.println("无效的批量请求: 类型 " + reqType + ", 块数 " + count);
+                            return false;
+                        }
+                        // BatchAnswer头部 (类型7 + 本批块数)
+                        ensureOut(6);
+                        out.putShort((short) 7);
+                        out.putInt(count);
+                        metrics.bytesIn(6);
+                        metrics.bytesOut(6);
+                        batchRemaining = count;
+                        state = STATE_BATCH_LEN;
+                        break;
+                    }
+                    case STATE_BATCH_LEN: {
+                        if (in.remaining() < 4) return true;
+                        blockLen = in.getInt();
+                        if (blockLen < 0 || blockLen > Reversetcpserver.MAX_BLOCK) {
+                            System.err.println("无效的块长度: " + blockLen);
+                            return false;
+                        }
+                        state = isLarge() ? startSpill() : STATE_BODY;
+                        break;
+                    }
+                    case STATE_HEADER: {
+                        if (in.remaining() < 6) return true;
+                        short reqType = in.getShort();
+                        blockLen = in.getInt();
+                        if (reqType != 3 || blockLen < 0 || blockLen > Reversetcpserver.MAX_BLOCK) {
+                            System.err.println("无效的请求: 类型 " + reqType + ", 长度 " + blockLen);
+                            return false;
+                        }
+                        state = isLarge() ? startSpill() : STATE_BODY;
+                        break;
+                    }
+                    case STATE_BODY: {
+                        if (bodyPermits < 0) {
+                            bodyPermits = admission.tryAcquireBytes(blockLen);
+                            if (bodyPermits < 0) {
+                                starved = true;
+                                reactor.starved.add(this);
+                                return true;
+                            }
+                        }
+                        if (in.remaining() < blockLen) return true;
+                        // 发送ReverseAnswer (类型4 + 长度 + 数据), 批量模式下只有 [长度 + 数据];
+                        // 直接按字节反向拷贝
+                        long t0 = System.nanoTime();
+                        ensureOut(6 + blockLen);
+                        if (batch == 0) {
+                            out.putShort((short) 4);
+                        }
+                        out.putInt(blockLen);
+                        byte[] src = in.array();
+                        byte[] dst = out.array();
+                        int s = in.arrayOffset() + in.position() + blockLen - 1;
+                        int d = out.arrayOffset() + out.position();
+                        for (int i = 0; i < blockLen; i++) {
+                            dst[d + i] = src[s - i];
+                        }
+                        out.position(out.position() + blockLen);
+                        in.position(in.position() + blockLen);
+                        outPermits += bodyPermits;
+                        bodyPermits = -1;
+                        blockDone(System.nanoTime() - t0);
+                        break;
+                    }
+                    case STATE_SPILL: {
+                        // 文件IO在Reactor线程上进行: 每轮最多写一段, 读缓冲中的其余数据由continueSpill下一轮续写
+                        int n = (int) Math.min(Math.min(in.remaining(), blockLen - spillPos), Reversetcpserver.SPILL_CHUNK);
+                        int limit = in.limit();
+                        in.limit(in.position() + n);
+                        Reversetcpserver.writeFully(spill, in, spillPos);
+                        in.limit(limit);
+                        spillPos += n;
+                        if (spillPos == blockLen) {
+                            state = STATE_SPILL_OUT; // 由下一次可写事件开始倒序读出
+                        } else if (in.hasRemaining() && !spillPending) {
+                            spillPending = true;
+                            reactor.spilling.add(this);
+                        }
+                        return true;
+                    }
+                    case STATE_SPILL_OUT: {
+                        // 每次可写事件从尚未发送的前缀尾部取一段, 在out中原地反转; 待发送数据达到上限时等待写出
+                        if (out.position() >= MAX_PENDING_OUT) return true;
+                        long t0 = System.nanoTime();
+                        int n = (int) Math.min(Reversetcpserver.SPILL_CHUNK, spillPos);
+                        ensureOut(n);
+                        int start = out.arrayOffset() + out.position();
+                        out.limit(out.position() + n);
+                        Reversetcpserver.readFully(spill, out, spillPos - n);
+                        out.limit(out.capacity());
+                        Reversetcpserver.reverse(out.array(), start, start + n);
+                        spillPos -= n;
+                        spillNanos += System.nanoTime() - t0;
+                        if (spillPos > 0) return true;
+                        spill.close();
+                        spill = null;
+                        blockDone(spillNanos);
+                        break;
+                    }
+                    default:
+                        return true;
+                }
+            }
+        }
+
+        private boolean isLarge() {
+            long threshold = largeBlockThreshold;
+            return threshold > 0 && blockLen > threshold;
+        }
+
+        // 大块: 先写出应答头部, 数据随后边到达边写入溢出文件; 不进堆, 也不占在途字节预算
+        private int startSpill() throws IOException {
+            spill = Reversetcpserver.openSpill();
+            spillPos = 0;
+            spillNanos = 0;
+            ensureOut(6);
+            if (batch == 0) {
+                out.putShort((short) 4);
+            }
+            out.putInt(blockLen);
+            return STATE_SPILL;
+        }
+
+        // 当前块的应答已全部写入out: 更新计数, 转到下一个报文
+        private void blockDone(long nanos) {
+            blockIndex++;
+            int header = batch == 0 ? 6 : 4;
+            metrics.block(nanos);
+            metrics.bytesIn(header + blockLen);
+            metrics.bytesOut(header + blockLen);
+            if (logEvery > 0 && blockIndex % logEvery == 0) {
+                System.out.printf("处理块 %d/%d (长度: %d)\n", blockIndex, nBlocks, blockLen);
+            }
+            if (blockIndex == nBlocks) {
+                state = STATE_DONE;
+            } else if (batch == 0) {
+                state = STATE_HEADER;
+            } else {
+                state = --batchRemaining > 0 ? STATE_BATCH_LEN : STATE_BATCH_HEADER;
+            }
+        }
+
+        // 发送Agree响应 (类型2), 批量模式下附带每批块数
+        private void agree() throws IOException {
+            admitted = true;
+            metrics.bytesOut(batch > 0 ? 6 : 2);
+            if (logEvery > 0) {
+                System.out.printf("客户端连接: %s, 总块数: %d%s%n", channel.getRemoteAddress(),
+                        nBlocks, batch > 0 ? ", 每批块数: " + batch : "");
+            }
+            ensureOut(6);
+            out.putShort((short) 2);
+            if (batch > 0) {
+                out.putInt(batch);
+            }
+            if (nBlocks <= 0) {
+                state = STATE_DONE;
+            } else {
+                state = batch > 0 ? STATE_BATCH_HEADER : STATE_HEADER;
+            }
+        }
+
+        // 发送Busy响应 (类型8 + 建议重试间隔毫秒), 发完后关闭
+        private void busy() throws IOException {
+            ensureOut(6);
+            out.putShort(Reverseadmission.BUSY);
+            out.putInt(admission.retryAfterMillis());
+            metrics.bytesOut(6);
+            metrics.rejected();
+            state = STATE_DONE;
+            if (logEvery > 0) {
+                System.out.println("服务器繁忙, 拒绝连接: " + channel.getRemoteAddress());
+            }
+        }
+
+        private void flush() throws IOException {
+            out.flip();
+            int written = channel.write(out);
+            out.compact();
+            int pendingOut = out.position();
+            if (pendingOut == 0) {
+                writeSince = 0;
+                admission.releaseBytes(outPermits);
+                outPermits = 0;
+            } else if (written > 0 || writeSince == 0) {
+                writeSince = System.nanoTime();
+            }
+            if (pendingOut == 0 && state == STATE_DONE) {
+                close();
+                return;
+            }
+            int ops = 0;
+            // 排队和倒序发送大块时不消费读缓冲, 读缓冲填满后继续关注可读只会让Reactor空转
+            if (pendingOut < MAX_PENDING_OUT && state != STATE_DONE && state != STATE_QUEUED
+                    && state != STATE_SPILL_OUT && !starved) {
+                ops |= SelectionKey.OP_READ;
+            }
+            // 倒序发送大块时即使out已发空也关注可写, 由onWritable取下一段
+            if (pendingOut > 0 || state == STATE_SPILL_OUT) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        private void ensureOut(int n) throws IOException {
+            if (out.remaining() < n) {
+                out = grow(out, (long) out.position() + n);
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (state == STATE_QUEUED) {
+                admission.leaveQueue(); // 排队中断开, Reactor重试时跳过
+            }
+            if (admitted) {
+                admission.release();
+            }
+            admission.releaseBytes(Math.max(0, bodyPermits) + outPermits);
+            if (spill != null) {
+                try {
+                    spill.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            metrics.connectionClosed();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // 按倍数扩容并保留已有内容, 超过数组长度上限时按协议错误处理
+    private static ByteBuffer grow(ByteBuffer buf, long minCapacity) throws IOException {
+        if (minCapacity > Reversetcpserver.MAX_FRAME) {
+            throw new IOException("缓冲区超出上限: " + minCapacity);
+        }
+        int capacity = buf.capacity();
+        while (capacity < minCapacity) {
+            capacity = (int) Math.min(Reversetcpserver.MAX_FRAME, capacity * 2L);
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buf.flip();
+        bigger.put(buf);
+        return bigger;
+    }
+}
@@ -1,15 +1,27 @@
 import java.io.*;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
 
 public class Reversetcpclient {
-    private static List<String> generateBlocks(String words, int lmin, int lmax) {
+    private static final long PROGRESS_STEP = 64L << 20; // 流式模式每64MB打印一次进度
+    private static final int BUSY_RETRIES = 5;            // 服务器回复Busy时最多尝试连接的次数
+
+    static List<String> generateBlocks(String words, int lmin, int lmax) {
         List<String> blocks = new ArrayList<String>();
         int total = words.length();
         int occupied = 0;
@@ -24,23 +36,37 @@ public class Reversetcpclient {
     }
     public static void main(String[] args){
         System.out.println("请输入IP,PORT,LMin,LMax,待传输的文件路径,以空格隔开,回车表示确认.");
+        System.out.println("可选参数: window=N (每个连接同时在途的块数,默认1), conns=N (并行连接数,默认1),");
+        System.out.println("         batch=N (每个请求携带的块数,默认1), stream (流式读写,适合大文件)");
         int lmin,lmax;
-        String words,res="";
+        String words=null;
         String[] message;
+        File f;
+        boolean stream;
+        int window;
         Scanner sc = new Scanner(System.in);
         while(true) {
             message = sc.nextLine().split("( +)");
             lmin = Integer.parseInt(message[2]);
             lmax = Integer.parseInt(message[3]);
-            File f = new File(message[4]);
+            stream = flag(message, "stream");
+            window = option(message, "window", 1);
+            if (window < 1) {
+                System.out.println("window必须为正整数,请重新输入!");
+                continue;
+            }
+            f = new File(message[4]);
             if (!f.isAbsolute()) {
                 f = new File(System.getProperty("user.dir") ,message[4]);
             }
             if (!f.exists()) {
                 System.out.println("文件不存在,请重新输入!");
+            } else if (stream) {
+                // 流式模式在发送时逐块校验ASCII (见FileIO.read), 失败时删除不完整的结果文件
+                break;
             } else {
                 try {
-                    words=new String(Files.readAllBytes(Paths.get(message[4])));
+                    words=new String(Files.readAllBytes(f.toPath()));
                     if(!words.matches("\\A\\p{ASCII}*\\z")){
                         System.out.println("文件存在非ASII字符,请检查后重新输入!");
                         continue;
@@ -51,64 +77,512 @@ public class Reversetcpclient {
                 }
             }
         }
-        List<String> blocks = generateBlocks(words, lmin, lmax);
-        try (Socket socket = new Socket(message[0],Integer.parseInt(message[1]))){
-            OutputStream os = socket.getOutputStream();
-            InputStream is = socket.getInputStream();
-            //init发送
-            System.out.println("发送Initialization报文...");
-            ByteBuffer buf = ByteBuffer.allocate(2+4);
-            buf.putShort((short)1);//Type
-            buf.putInt(blocks.size());//N
-            os.write(buf.array());
-            os.flush();
-            //接收agree
-            System.out.println("等待Agree响应...");
-            byte[] head=readByte(is,2);
-            System.out.println("收到Agree响应，开始处理数据块");
-            int cnt=1;
-            for (String block : blocks) {
-                //reverseRequest发送
-                System.out.printf("发送块 %d/%d (长度: %d字节)%n",cnt, blocks.size(), block.length());
-                ByteBuffer bufout = ByteBuffer.allocate(2+4+block.length());
-                bufout.putShort((short)3);
-                bufout.putInt(block.length());
-                bufout.put(block.getBytes());
-                os.write(bufout.array());
-                os.flush();
-                System.out.println(block);
-                //reverseAnswer接收
-                System.out.println("等待Answer响应...");
-                byte[] ansheader=readByte(is,2);
-                byte[] anslen=readByte(is,4);
-                int len=ByteBuffer.wrap(anslen).getInt();
-                String ansdata=new String(readByte(is,len));
-                res=ansdata+res;
-                System.out.println("第"+cnt+"块:"+ansdata);
-                cnt++;
-            }
-        }catch (Exception e){
-            throw new IllegalArgumentException(e.getMessage());
-        }
+        Settings settings = new Settings(message[0], Integer.parseInt(message[1]));
+        settings.window = window;
+        settings.conns = option(message, "conns", 1);
+        settings.batch = option(message, "batch", 1);
+        settings.verbose = !stream;
         String resname="res.txt";
         while(new File(resname).exists()){
             resname="r"+resname;
         }
-        try(FileOutputStream f=new FileOutputStream(resname)){
-            f.write(res.getBytes());
-            f.flush();
+        if (stream) {
+            try (FileChannel in = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+                 RandomAccessFile raf = new RandomAccessFile(resname, "rw")) {
+                BlockPlan plan = new BlockPlan(in.size(), lmin, lmax, new Random().nextLong());
+                // 预先确定输出文件大小, 每个应答直接写到最终位置
+                raf.setLength(plan.covered);
+                FileChannel out = raf.getChannel();
+                System.out.printf("流式传输: %d字节, %d块%n", plan.covered, plan.count);
+                transferParallel(settings, plan.count, plan::cursor, plan.covered, new FileIO(in, out));
+                out.force(false);
+            } catch (Exception e) {
+                // 不保留不完整的结果文件
+                new File(resname).delete();
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            System.out.println("结果已保存为(r*)res文件(存在防重名)");
+            return;
+        }
+        List<String> blocks = generateBlocks(words, lmin, lmax);
+        long covered = 0;
+        for (String block : blocks) {
+            covered += block.length();
+        }
+        byte[] res = new byte[(int) covered];
+        try {
+            IntFunction<IntSupplier> lengths = from -> {
+                Iterator<String> it = blocks.listIterator(from);
+                return () -> it.next().length();
+            };
+            transferParallel(settings, blocks.size(), lengths, covered, new ArrayIO(words.getBytes(), res));
+        }catch (Exception e){
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        try(FileOutputStream fos=new FileOutputStream(resname)){
+            fos.write(res);
+            fos.flush();
             System.out.println("结果已保存为(r*)res文件(存在防重名)");
         }catch (IOException e){
             throw new RuntimeException(e);
         }
     }
+
+    // 一次传输的连接参数
+    static final class Settings {
+        final String host;
+        final int port;
+        int window = 1;  // 每个连接同时在途的请求数
+        int conns = 1;   // 并行连接数
+        int batch = 1;   // 每个请求携带的块数, 大于1时使用批量报文 (类型5~7)
+        boolean verbose = true;
+
+        Settings(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+    }
+
+    // 块数据的来源与应答的去处. 结果是整个被覆盖区间的反转,
+    // 因此位于输入偏移off、长度len的块, 其应答写到输出的 covered-off-len 处
+    interface BlockIO {
+        void read(long offset, byte[] dst, int dstOff, int len) throws IOException;
+        void write(long position, byte[] src, int srcOff, int len) throws IOException;
+    }
+
+    // 内存模式: 整个文件和结果都在字节数组中
+    static final class ArrayIO implements BlockIO {
+        private final byte[] in;
+        private final byte[] out;
+
+        ArrayIO(byte[] in, byte[] out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        public void read(long offset, byte[] dst, int dstOff, int len) {
+            System.arraycopy(in, (int) offset, dst, dstOff, len);
+        }
+
+        public void write(long position, byte[] src, int srcOff, int len) {
+            System.arraycopy(src, srcOff, out, (int) position, len);
+        }
+    }
+
+    // 流式模式: 按块定位读输入文件并校验ASCII, 应答定位写入预分配的输出文件, 内存占用与文件大小无关
+    static final class FileIO implements BlockIO {
+        private final FileChannel in;
+        private final FileChannel out;
+
+        FileIO(FileChannel in, FileChannel out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        public void read(long offset, byte[] dst, int dstOff, int len) throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(dst, dstOff, len);
+            while (bb.hasRemaining()) {
+                if (in.read(bb, offset + bb.position() - dstOff) < 0) {
+                    throw new EOFException("文件在偏移 " + offset + " 处提前结束");
+                }
+            }
+            for (int i = dstOff; i < dstOff + len; i++) {
+                if (dst[i] < 0) {
+                    throw new IOException("文件存在非ASCII字符, 偏移: " + (offset + i - dstOff));
+                }
+            }
+        }
+
+        public void write(long position, byte[] src, int srcOff, int len) throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(src, srcOff, len);
+            while (bb.hasRemaining()) {
+                out.write(bb, position + bb.position() - srcOff);
+            }
+        }
+    }
+
+    // 流式模式的分块方案: 与generateBlocks规则相同, 块长由种子和块序号直接算出, 不需要保存任何块.
+    // 构造时扫描一遍, 每CHECKPOINT块记下输入偏移, cursor(from)从最近的记录点起最多重放CHECKPOINT块
+    static final class BlockPlan {
+        private static final int CHECKPOINT = 4096;
+        private static final long GAMMA = 0x9E3779B97F4A7C15L;
+        private final long total;
+        private final int lmin;
+        private final int lmax;
+        private final long seed;
+        private long[] checkpoints = new long[16]; // checkpoints[k] 为第 k*CHECKPOINT 块的输入偏移
+        final int count;
+        final long covered;
+
+        BlockPlan(long total, int lmin, int lmax, long seed) {
+            this.total = total;
+            this.lmin = lmin;
+            this.lmax = lmax;
+            this.seed = seed;
+            Cursor c = new Cursor(0, 0);
+            long n = 0;
+            while (c.hasNext()) {
+                if (n % CHECKPOINT == 0) {
+                    int k = (int) (n / CHECKPOINT);
+                    if (k == checkpoints.length) {
+                        checkpoints = Arrays.copyOf(checkpoints, k * 2);
+                    }
+                    checkpoints[k] = c.occupied;
+                }
+                c.getAsInt();
+                n++;
+            }
+            if (n > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("块数超过协议上限, 请增大LMin");
+            }
+            this.count = (int) n;
+            this.covered = c.occupied;
+        }
+
+        Cursor cursor() {
+            return new Cursor(0, 0);
+        }
+
+        // 从第from块开始的游标
+        Cursor cursor(int from) {
+            int k = from / CHECKPOINT;
+            Cursor c = new Cursor((long) k * CHECKPOINT, checkpoints[k]);
+            for (int i = k * CHECKPOINT; i < from; i++) {
+                c.getAsInt();
+            }
+            return c;
+        }
+
+        final class Cursor implements IntSupplier {
+            private long index;    // 下一块的序号
+            private long occupied; // 下一块的输入偏移
+
+            Cursor(long index, long occupied) {
+                this.index = index;
+                this.occupied = occupied;
+            }
+
+            boolean hasNext() {
+                return occupied + lmin <= total;
+            }
+
+            public int getAsInt() {
+                int blocksize = lmin + (int) Math.floorMod(mix(seed + ++index * GAMMA), (long) (lmax - lmin + 1));
+                blocksize = (int) Math.min(blocksize, total - occupied);
+                occupied += blocksize;
+                return blocksize;
+            }
+        }
+
+        // SplitMix64的输出函数, 第i块的随机数只取决于种子和i
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    // 把count个块切成conns份连续的块, 每份在独立的连接上各自握手并行传输.
+    // 每个应答按其输入偏移直接写到结果中的最终位置, 因此各连接完成的先后不影响结果顺序.
+    // 任一连接失败时取消其余连接, 不再等它们传完
+    private static void transferParallel(Settings settings, int count, IntFunction<IntSupplier> lengthsFrom,
+                                         long covered, BlockIO io)
+            throws IOException, InterruptedException {
+        int n = Math.max(1, Math.min(settings.conns, count));
+        if (n == 1) {
+            transfer(settings, count, lengthsFrom.apply(0), lengthsFrom.apply(0), 0, covered, io, new Cancellation());
+            return;
+        }
+        // 先扫描一遍块长, 求出每份的起始块和起始偏移
+        int[] firstBlock = new int[n + 1];
+        long[] firstOffset = new long[n];
+        IntSupplier all = lengthsFrom.apply(0);
+        long offset = 0;
+        for (int i = 0, k = 0; i < count; i++) {
+            if (k < n && i == (int) ((long) count * k / n)) {
+                firstBlock[k] = i;
+                firstOffset[k] = offset;
+                k++;
+            }
+            offset += all.getAsInt();
+        }
+        firstBlock[n] = count;
+        System.out.printf("使用 %d 个并行连接%n", n);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Cancellation cancellation = new Cancellation();
+        Thread[] workers = new Thread[n];
+        for (int k = 0; k < n; k++) {
+            int share = k;
+            workers[k] = new Thread(() -> {
+                try {
+                    transfer(settings, firstBlock[share + 1] - firstBlock[share], lengthsFrom.apply(firstBlock[share]),
+                            lengthsFrom.apply(firstBlock[share]), firstOffset[share], covered, io, cancellation);
+                } catch (IOException | InterruptedException e) {
+                    // 只记录第一个错误, 其余连接随后因取消而失败
+                    if (error.compareAndSet(null, e)) {
+                        cancellation.cancel();
+                        for (Thread worker : workers) {
+                            if (worker != null) {
+                                worker.interrupt(); // 结束Busy重试等待
+                            }
+                        }
+                    }
+                }
+            }, "conn-" + k);
+            workers[k].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (error.get() != null) {
+            throw new IOException("并行传输失败: " + error.get().getMessage(), error.get());
+        }
+    }
+
+    // 一个连接上完成握手并发送count个块, 块长依次由lengths给出, 第一块位于输入偏移start.
+    // 写线程持续发送请求, 当前线程按序接收应答, 在途请求数不超过window, window为1时即逐个请求-应答.
+    // 批量模式下每个请求 (类型6) 携带多块, 输出经缓冲合并, 每批只flush一次.
+    // expected 给出同一组块长, 用于逐块核对应答的类型和长度, 不一致时立即失败而不是把错位的数据写入结果
+    private static void transfer(Settings settings, int count, IntSupplier lengths, IntSupplier expected,
+                                 long start, long covered, BlockIO io, Cancellation cancellation)
+            throws IOException, InterruptedException {
+        boolean verbose = settings.verbose;
+        byte[] head = new byte[10];
+        // 写线程出错时关闭套接字使接收端的阻塞读立即失败, 因此不放在try-with-resources中
+        Socket socket = handshake(settings, count, head, cancellation);
+        try {
+            OutputStream os = new BufferedOutputStream(socket.getOutputStream());
+            InputStream is = new BufferedInputStream(socket.getInputStream());
+            int batch = settings.batch > 1 ? ByteBuffer.wrap(head, 0, 4).getInt() : 0;
+            System.out.println("收到Agree响应，开始处理数据块");
+            int requests = batch > 0 ? (count + batch - 1) / batch : count;
+            int perRequest = Math.max(batch, 1);
+            Semaphore inflight = new Semaphore(settings.window);
+            AtomicReference<Exception> sendError = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                byte[] frame = new byte[8192];
+                long offset = start;
+                int cnt = 0;
+                try {
+                    for (int r = 0; r < requests; r++) {
+                        inflight.acquire();
+                        int n = Math.min(perRequest, count - cnt);
+                        if (batch > 0) {
+                            //batchRequest头部: 类型6 + 本批块数
+                            ByteBuffer.wrap(frame, 0, 6).putShort((short)6).putInt(n);
+                            os.write(frame, 0, 6);
+                        }
+                        for (int i = 0; i < n; i++) {
+                            int len = lengths.getAsInt();
+                            if (6 + len > frame.length) {
+                                frame = new byte[6 + len];
+                            }
+                            int hdr = batch > 0 ? 4 : 6;
+                            io.read(offset, frame, hdr, len);
+                            putRequestHeader(frame, batch > 0, len);
+                            os.write(frame, 0, hdr + len);
+                            cnt++;
+                            if (verbose) {
+                                System.out.printf("发送块 %d/%d (长度: %d字节)%n", cnt, count, len);
+                                System.out.println(new String(frame, hdr, len));
+                            }
+                            offset += len;
+                        }
+                        os.flush();
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // 关闭连接使接收端的阻塞读立即失败
+                    sendError.set(e);
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }, "block-writer");
+            writer.start();
+            try {
+                byte[] ans = new byte[8192];
+                long offset = start;
+                long nextProgress = PROGRESS_STEP;
+                int cnt = 0;
+                for (int r = 0; r < requests; r++) {
+                    //reverseAnswer接收, 批量模式下先读batchAnswer头部: 类型7 + 本批块数
+                    if (verbose) {
+                        System.out.println("等待Answer响应...");
+                    }
+                    int n = Math.min(perRequest, count - cnt);
+                    if (batch > 0) {
+                        readFully(is, ans, 0, 6);
+                        ByteBuffer ah = ByteBuffer.wrap(ans, 0, 6);
+                        short type = ah.getShort();
+                        int got = ah.getInt();
+                        if (type != 7 || got != n) {
+                            throw new IOException("批量应答不匹配: 类型 " + type + ", 块数 " + got + ", 应为 " + n);
+                        }
+                    }
+                    for (int i = 0; i < n; i++) {
+                        // 逐块应答为 类型4 + len + 数据, 批内各块只有 len + 数据
+                        int want = expected.getAsInt();
+                        int hdr = batch > 0 ? 4 : 6;
+                        readFully(is, ans, 0, hdr);
+                        ByteBuffer ah = ByteBuffer.wrap(ans, 0, hdr);
+                        short type = batch > 0 ? 0 : ah.getShort();
+                        int len = ah.getInt();
+                        if (batch == 0 && type != 4 || len != want) {
+                            throw new IOException("应答不匹配: 第" + (cnt + 1) + "块, "
+                                    + (batch == 0 ? "类型 " + type + ", " : "") + "长度 " + len + ", 应为 " + want);
+                        }
+                        if (len > ans.length) {
+                            ans = new byte[len];
+                        }
+                        readFully(is, ans, 0, len);
+                        io.write(covered - offset - len, ans, 0, len);
+                        offset += len;
+                        cnt++;
+                        if (verbose) {
+                            System.out.println("第"+cnt+"块:"+new String(ans, 0, len));
+                        } else if (offset - start >= nextProgress) {
+                            System.out.printf("已完成 %d/%d 块, %d MB%n", cnt, count, (offset - start) >> 20);
+                            nextProgress += PROGRESS_STEP;
+                        }
+                    }
+                    inflight.release();
+                }
+            } catch (IOException e) {
+                if (sendError.get() != null) {
+                    throw new IOException("发送失败: " + sendError.get().getMessage(), e);
+                }
+                throw e;
+            } finally {
+                // 中断唤不醒阻塞在套接字写上的线程: 先关闭套接字使其写立即失败, 再等它结束
+                socket.close();
+                writer.interrupt();
+                writer.join();
+            }
+        } finally {
+            cancellation.unregister(socket);
+            socket.close();
+        }
+    }
+
+    // 在frame开头写入块请求头部: reverseRequest为 类型3 + len, 批内各块只有 len; 返回头部长度
+    static int putRequestHeader(byte[] frame, boolean batch, int len) {
+        ByteBuffer hbuf = ByteBuffer.wrap(frame, 0, 6);
+        if (!batch) {
+            hbuf.putShort((short)3);
+        }
+        hbuf.putInt(len);
+        return hbuf.position();
+    }
+
+    // 并行传输中各连接共享的取消状态: 取消时关闭已登记的套接字, 使各连接的阻塞读写立即失败
+    static final class Cancellation {
+        private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+
+        // 先登记再检查, 与cancel()先置标志再遍历配合, 保证取消后登记的套接字也会被关闭
+        void register(Socket socket) throws IOException {
+            sockets.add(socket);
+            if (cancelled) {
+                throw new IOException("传输已取消");
+            }
+        }
+
+        void unregister(Socket socket) {
+            sockets.remove(socket);
+        }
+
+        void cancel() {
+            cancelled = true;
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+    private static int option(String[] message, String name, int def) {
+        for (int i = 5; i < message.length; i++) {
+            if (message[i].startsWith(name + "=")) {
+                return Integer.parseInt(message[i].substring(name.length() + 1));
+            }
+        }
+        return def;
+    }
+    private static boolean flag(String[] message, String name) {
+        for (int i = 5; i < message.length; i++) {
+            if (message[i].equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
     public static byte[] readByte(InputStream is,int n) throws IOException {
         byte[] data = new byte[n];
+        readFully(is, data, 0, n);
+        return data;
+    }
+    // 建立连接并完成Initialization/Agree握手, 批量模式下服务器接受的每批块数放在head[0..4).
+    // 服务器回复Busy (类型8 + 建议重试间隔毫秒) 时关闭连接, 按建议间隔等待后重连.
+    // 套接字一建立就登记到cancellation, 由调用方在关闭时注销
+    private static Socket handshake(Settings settings, int count, byte[] head, Cancellation cancellation)
+            throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            Socket socket = new Socket(settings.host, settings.port);
+            int retryAfter;
+            try {
+                cancellation.register(socket);
+                OutputStream os = socket.getOutputStream();
+                InputStream is = socket.getInputStream();
+                ByteBuffer hb = ByteBuffer.wrap(head);
+                //init发送
+                System.out.println("发送Initialization报文...");
+                if (settings.batch > 1) {
+                    hb.putShort((short)5).putInt(count).putInt(settings.batch);
+                } else {
+                    hb.putShort((short)1).putInt(count);
+                }
+                os.write(head, 0, hb.position());
+                os.flush();
+                //接收agree, 批量模式下附带服务器接受的每批块数
+                System.out.println("等待Agree响应...");
+                readFully(is, head, 0, 2);
+                short type = ByteBuffer.wrap(head, 0, 2).getShort();
+                if (type == 2) {
+                    if (settings.batch > 1) {
+                        readFully(is, head, 0, 4);
+                    }
+                    return socket;
+                }
+                if (type != 8) {
+                    throw new IOException("无效的Agree类型: " + type);
+                }
+                readFully(is, head, 0, 4);
+                retryAfter = ByteBuffer.wrap(head, 0, 4).getInt();
+            } catch (IOException e) {
+                cancellation.unregister(socket);
+                socket.close();
+                throw e;
+            }
+            cancellation.unregister(socket);
+            socket.close();
+            if (attempt >= BUSY_RETRIES) {
+                throw new IOException("服务器繁忙, 已重试" + attempt + "次");
+            }
+            System.out.println("服务器繁忙, " + retryAfter + "ms后重试...");
+            Thread.sleep(retryAfter);
+        }
+    }
+
+    private static void readFully(InputStream is, byte[] data, int off, int n) throws IOException {
         int bytesRead = 0;
         while (bytesRead < n) {
-            int count = is.read(data, bytesRead, n - bytesRead);
+            int count = is.read(data, off + bytesRead, n - bytesRead);
+            if (count < 0) {
+                throw new EOFException("连接已关闭");
+            }
             bytesRead += count;
         }
-        return data;
     }
-}
\ No newline at end of file
+}
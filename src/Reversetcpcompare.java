@@ -0,0 +1,164 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在相同连接数下依次运行 Reversetcpserver 的各执行策略, 报告吞吐量和内存/线程峰值.
+ * 客户端与服务器在同一JVM中运行, 数值用于策略之间的相对比较.
+ * 平台线程栈在堆外而虚拟线程栈在堆上, 只看堆会偏向平台线程, 因此同时报告进程常驻内存(RSS)的增量;
+ * RSS只在Linux上可读. 当前JDK不支持虚拟线程时跳过VIRTUAL, 不用cached线程池冒充.
+ */
+public class Reversetcpcompare {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("请输入连接数,每连接块数,块大小,fixed线程池大小,以空格隔开,回车表示确认.");
+        Scanner sc = new Scanner(System.in);
+        String[] message = sc.nextLine().trim().split("( +)");
+        int conns = Integer.parseInt(message[0]);
+        int blocks = Integer.parseInt(message[1]);
+        int blockSize = Integer.parseInt(message[2]);
+        int poolSize = message.length > 3 ? Integer.parseInt(message[3]) : 0;
+
+        System.out.printf("%-8s %8s %10s %12s %10s %12s %12s %12s%n",
+                "策略", "连接数", "耗时(ms)", "块/秒", "MB/s", "堆峰值(MB)", "RSS峰值(MB)", "平台线程峰值");
+        for (Reversetcpserver.ExecutorMode mode : Reversetcpserver.ExecutorMode.values()) {
+            if (mode == Reversetcpserver.ExecutorMode.VIRTUAL && !Reversetcpserver.virtualThreadsAvailable()) {
+                System.out.printf("%-8s 当前JDK不支持虚拟线程 (需要JDK 21+), 跳过%n", mode);
+                continue;
+            }
+            run(mode, conns, blocks, blockSize, poolSize);
+            System.gc();
+        }
+    }
+
+    private static void run(Reversetcpserver.ExecutorMode mode, int conns, int blocks, int blockSize,
+                            int poolSize) throws Exception {
+        Reversetcpserver server = new Reversetcpserver(0, mode, poolSize);
+        server.setLogEvery(0);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.err.println("服务器启动失败: " + e.getMessage());
+            }
+        });
+        serverThread.start();
+        while (server.getLocalPort() < 0) {
+            Thread.sleep(10);
+        }
+        int port = server.getLocalPort();
+
+        System.gc();
+        long baseHeap = MEMORY.getHeapMemoryUsage().getUsed();
+        long baseRss = residentBytes();
+        AtomicLong peakHeap = new AtomicLong(baseHeap);
+        AtomicLong peakRss = new AtomicLong(baseRss);
+        AtomicLong peakThreads = new AtomicLong(THREADS.getThreadCount());
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor();
+        monitor.scheduleAtFixedRate(() -> {
+            peakHeap.accumulateAndGet(MEMORY.getHeapMemoryUsage().getUsed(), Math::max);
+            peakRss.accumulateAndGet(residentBytes(), Math::max);
+            peakThreads.accumulateAndGet(THREADS.getThreadCount(), Math::max);
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        byte[] payload = new byte[blockSize];
+        Random rand = new Random(1);
+        for (int i = 0; i < blockSize; i++) {
+            payload[i] = (byte) ('a' + rand.nextInt(26));
+        }
+
+        // 所有连接先完成建连并发送Initialization, 再同时开始发送数据块
+        CountDownLatch connected = new CountDownLatch(conns);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> clients = new ArrayList<>(conns);
+        for (int c = 0; c < conns; c++) {
+            Thread t = new Thread(() -> session(port, blocks, payload, connected, go));
+            t.setDaemon(true);
+            t.start();
+            clients.add(t);
+        }
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread t : clients) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        monitor.shutdownNow();
+        server.stop();
+        serverThread.join();
+
+        double seconds = elapsed / 1e9;
+        long totalBlocks = (long) conns * blocks;
+        System.out.printf("%-8s %8d %10d %12.0f %10.2f %12.1f %12s %12d%n",
+                mode, conns, elapsed / 1_000_000, totalBlocks / seconds,
+                totalBlocks * blockSize / seconds / (1 << 20),
+                (peakHeap.get() - baseHeap) / (double) (1 << 20),
+                baseRss < 0 ? "-" : String.format("%.1f", (peakRss.get() - baseRss) / (double) (1 << 20)),
+                peakThreads.get() - conns);
+    }
+
+    // 进程常驻内存(字节), 取自 /proc/self/status 的 VmRSS, 包含线程栈等堆外内存; 读不到时返回-1
+    private static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // 非Linux系统
+        }
+        return -1;
+    }
+
+    private static void session(int port, int blocks, byte[] payload,
+                                CountDownLatch connected, CountDownLatch go) {
+        boolean counted = false;
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.writeShort(1);
+            out.writeInt(blocks);
+            out.flush();
+            connected.countDown();
+            counted = true;
+            go.await();
+            in.readShort(); // Agree
+            byte[] answer = new byte[payload.length];
+            for (int i = 0; i < blocks; i++) {
+                out.writeShort(3);
+                out.writeInt(payload.length);
+                out.write(payload);
+                out.flush();
+                in.readShort();
+                in.readFully(answer, 0, in.readInt());
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("会话失败: " + e.getMessage());
+        } finally {
+            if (!counted) {
+                connected.countDown();
+            }
+        }
+    }
+}
@@ -1,76 +1,434 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Reversetcpserver {
+    // 每个连接的执行策略: 无界缓存线程池 / 固定大小平台线程池 / 每连接一个虚拟线程
+    public enum ExecutorMode { CACHED, FIXED, VIRTUAL }
+
+    static final int BACKLOG = 1024; // 大量客户端同时建连时避免SYN被丢弃
+    private static final int INITIAL_FRAME = 8192;
+    static final int MAX_FRAME = Integer.MAX_VALUE - 8;         // 数组长度上限
+    static final int MAX_BLOCK = MAX_FRAME - 6;                 // 头部+数据须能放入一个帧缓冲
+    static final int MAX_BATCH = 1024; // 批量模式下每个请求最多携带的块数
+    static final int DEFAULT_LARGE_BLOCK_MB = 64;
+    static final int SPILL_CHUNK = 64 * 1024;              // 大块读入和回写时每次搬运的字节数
+    static final int DEFAULT_TIMEOUT_MS = 60_000;          // 默认读/写超时
+    private static final long BUSY_LINGER_MS = 1000;       // 接收线程回复Busy后延迟关闭的时间
+
     private final int port;
+    private final ExecutorMode mode;
+    private final int poolSize;
+    private final Reversemetrics metrics = new Reversemetrics();
+    private volatile int logEvery = 1;      // 每N块打印一次处理日志, 0表示不打印
+    private volatile int statsInterval = 0; // 汇总行的打印间隔(秒), 0表示不打印
+    // 超过此长度的块不进堆: 溢出到临时文件, 再倒序分段读出反转回写; 0表示关闭
+    private volatile long largeBlockThreshold = DEFAULT_LARGE_BLOCK_MB << 20;
+    private volatile Reverseadmission admission = Reverseadmission.unlimited();
+    private volatile int readTimeoutMillis = DEFAULT_TIMEOUT_MS;  // 等待客户端数据的最长时间, 0表示不限
+    private volatile int writeTimeoutMillis = DEFAULT_TIMEOUT_MS; // 单次写阻塞的最长时间, 0表示不限
+    private final Set<WatchedOutputStream> writers = ConcurrentHashMap.newKeySet(); // 供写超时检查
+    private volatile ServerSocket serverSocket;
 
     public Reversetcpserver(int port) {
+        this(port, ExecutorMode.CACHED, 0);
+    }
+
+    public Reversetcpserver(int port, ExecutorMode mode, int poolSize) {
         this.port = port;
+        this.mode = mode;
+        this.poolSize = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    public void setLogEvery(int logEvery) {
+        this.logEvery = logEvery;
+    }
+
+    public void setStatsInterval(int statsInterval) {
+        this.statsInterval = statsInterval;
+    }
+
+    public void setLargeBlockThreshold(long bytes) {
+        this.largeBlockThreshold = bytes;
+    }
+
+    public void setAdmission(Reverseadmission admission) {
+        this.admission = admission;
+    }
+
+    public void setTimeouts(int readTimeoutMillis, int writeTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    public Reversemetrics getMetrics() {
+        return metrics;
     }
 
     public void start() throws IOException {
-        ExecutorService threadPool = Executors.newCachedThreadPool();
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("服务器启动, 监听端口: " + port);
+        ExecutorService threadPool = newExecutor(mode, poolSize);
+        // 写超时检查, 以及接收线程回复Busy后的延迟关闭
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "server-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        try (ServerSocket serverSocket = new ServerSocket(port, BACKLOG)) {
+            this.serverSocket = serverSocket;
+            System.out.println("服务器启动(" + mode + "), 监听端口: " + serverSocket.getLocalPort());
+            metrics.start(serverSocket.getLocalPort(), statsInterval);
+            if (writeTimeoutMillis > 0) {
+                long period = Math.max(100, writeTimeoutMillis / 4);
+                watchdog.scheduleAtFixedRate(this::checkStalledWriters, period, period, TimeUnit.MILLISECONDS);
+            }
             while (true) {
                 Socket clientSocket = serverSocket.accept();
-                threadPool.submit(() -> handleClient(clientSocket));
+                // 准入在分配处理线程之前: 有名额且无人排队时直接处理, 否则队列未满时排到队尾由处理线程等待,
+                // 队列已满则当场回复Busy
+                Reverseadmission admission = this.admission;
+                if (admission.tryAdmit()) {
+                    threadPool.submit(() -> handleClient(clientSocket, admission, true));
+                } else if (admission.enterQueue()) {
+                    threadPool.submit(() -> handleClient(clientSocket, admission, false));
+                } else {
+                    rejectBusy(clientSocket, admission, watchdog);
+                }
+            }
+        } catch (SocketException e) {
+            // stop()关闭监听套接字时accept抛出异常, 属于正常退出
+            ServerSocket ss = serverSocket;
+            if (ss == null || !ss.isClosed()) {
+                throw e;
+            }
+        } finally {
+            threadPool.shutdownNow();
+            watchdog.shutdownNow();
+            metrics.stop();
+        }
+    }
+
+    // 在接收线程上回复Busy (类型8 + 建议重试间隔毫秒) 并半关闭. 立即关闭会因客户端随后发来的
+    // Initialization未被读取而触发RST, 客户端可能因此读不到Busy, 所以过BUSY_LINGER_MS再关闭
+    private void rejectBusy(Socket socket, Reverseadmission admission, ScheduledExecutorService watchdog) {
+        metrics.connectionOpened();
+        metrics.rejected();
+        byte[] busy = new byte[6];
+        putShort(busy, 0, Reverseadmission.BUSY);
+        putInt(busy, 2, admission.retryAfterMillis());
+        try {
+            socket.getOutputStream().write(busy);
+            socket.shutdownOutput();
+            metrics.bytesOut(6);
+            if (logEvery > 0) {
+                System.out.println("服务器繁忙, 拒绝连接: " + socket.getRemoteSocketAddress());
             }
+        } catch (IOException e) {
+            metrics.error();
+        }
+        watchdog.schedule(() -> {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 已关闭
+            }
+            metrics.connectionClosed();
+        }, BUSY_LINGER_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // 关闭写阻塞超过写超时的连接, 阻塞中的写随即抛出异常, 处理线程得以释放
+    private void checkStalledWriters() {
+        long limit = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        long now = System.nanoTime();
+        for (WatchedOutputStream w : writers) {
+            long since = w.writingSince;
+            if (since != 0 && now - since > limit) {
+                w.stalled = true;
+                try {
+                    w.socket.close();
+                } catch (IOException e) {
+                    // 已关闭
+                }
+            }
+        }
+    }
+
+    // 记录当前套接字写开始的时刻, 供写超时检查; 读超时由SO_TIMEOUT实现
+    private static final class WatchedOutputStream extends FilterOutputStream {
+        final Socket socket;
+        volatile long writingSince; // 0表示当前没有进行中的写
+        volatile boolean stalled;   // 因写超时被关闭
+
+        WatchedOutputStream(Socket socket) throws IOException {
+            super(socket.getOutputStream());
+            this.socket = socket;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writingSince = System.nanoTime();
+            try {
+                out.write(b);
+            } finally {
+                writingSince = 0;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writingSince = System.nanoTime();
+            try {
+                out.write(b, off, len);
+            } finally {
+                writingSince = 0;
+            }
+        }
+    }
+
+    // 实际监听端口, 端口为0时由系统分配; 未启动时返回-1
+    public int getLocalPort() {
+        ServerSocket ss = serverSocket;
+        return ss == null ? -1 : ss.getLocalPort();
+    }
+
+    public void stop() throws IOException {
+        ServerSocket ss = serverSocket;
+        if (ss != null) {
+            ss.close();
+        }
+    }
+
+    // JDK 21+ 才有虚拟线程
+    static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    static ExecutorService newExecutor(ExecutorMode mode, int poolSize) {
+        switch (mode) {
+            case FIXED:
+                return Executors.newFixedThreadPool(poolSize);
+            case VIRTUAL:
+                // JDK 21+ 才有虚拟线程, 通过反射调用以便在旧JDK上也能编译运行
+                try {
+                    return (ExecutorService) Executors.class
+                            .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.err.println("当前JDK不支持虚拟线程, 改用cached线程池");
+                    return Executors.newCachedThreadPool();
+                }
+            default:
+                return Executors.newCachedThreadPool();
         }
     }
 
-    private void handleClient(Socket socket) {
-        try (InputStream is = socket.getInputStream();
-             OutputStream os = socket.getOutputStream()) {
+    // admitted为false时连接在accept时已占用一个排队位置, 读到Initialization后在此等待名额
+    private void handleClient(Socket socket, Reverseadmission admission, boolean admitted) {
+        metrics.connectionOpened();
+        int logEvery = this.logEvery;
+        boolean waiting = !admitted;
+        WatchedOutputStream watched = null;
+        // 输出经缓冲合并, 只在批次边界或暂无后续请求时flush
+        try (InputStream is = new BufferedInputStream(socket.getInputStream());
+             OutputStream os = new BufferedOutputStream(watched = new WatchedOutputStream(socket))) {
+            writers.add(watched);
+            socket.setSoTimeout(readTimeoutMillis);
 
-            // 读取Initialization报文 (类型1 + 块数N)
-            byte[] initHeader = readBytes(is, 2);
-            short type = ByteBuffer.wrap(initHeader).getShort();
-            if (type != 1) {
+            // 每个连接复用一个缓冲区: [类型(2) + 长度(4) + 数据], 块超过容量时才扩容
+            byte[] frame = new byte[INITIAL_FRAME];
+
+            // 读取Initialization报文 (类型1 + 块数N), 或批量Initialization (类型5 + 块数N + 每批块数)
+            readFully(is, frame, 0, 6);
+            short type = getShort(frame, 0);
+            if (type != 1 && type != 5) {
                 System.err.println("无效的初始化类型: " + type);
+                metrics.error();
                 return;
             }
 
-            byte[] nBytes = readBytes(is, 4);
-            int nBlocks = ByteBuffer.wrap(nBytes).getInt();
-            System.out.printf("客户端连接: %s, 总块数: %d%n",
-                    socket.getRemoteSocketAddress(), nBlocks);
+            int nBlocks = getInt(frame, 2);
+            int batch = 0;
+            if (type == 5) {
+                readFully(is, frame, 0, 4);
+                batch = Math.max(1, Math.min(getInt(frame, 0), MAX_BATCH));
+            }
+            metrics.bytesIn(type == 5 ? 10 : 6);
+
+            // 排队的连接等待名额, 仍无名额则回复Busy (类型8 + 建议重试间隔毫秒) 后关闭
+            if (waiting) {
+                waiting = false;
+                admitted = admission.awaitQueued();
+            }
+            if (!admitted) {
+                putShort(frame, 0, Reverseadmission.BUSY);
+                putInt(frame, 2, admission.retryAfterMillis());
+                os.write(frame, 0, 6);
+                os.flush();
+                metrics.bytesOut(6);
+                metrics.rejected();
+                if (logEvery > 0) {
+                    System.out.println("服务器繁忙, 拒绝连接: " + socket.getRemoteSocketAddress());
+                }
+                return;
+            }
+            if (logEvery > 0) {
+                System.out.printf("客户端连接: %s, 总块数: %d%s%n", socket.getRemoteSocketAddress(), nBlocks,
+                        batch > 0 ? ", 每批块数: " + batch : "");
+            }
 
-            // 发送Agree响应 (类型2)
-            os.write(ByteBuffer.allocate(2).putShort((short) 2).array());
+            // 发送Agree响应 (类型2), 批量模式下附带服务器接受的每批块数
+            putShort(frame, 0, (short) 2);
+            putInt(frame, 2, batch);
+            os.write(frame, 0, batch > 0 ? 6 : 2);
             os.flush();
+            metrics.bytesOut(batch > 0 ? 6 : 2);
+
+            if (batch > 0) {
+                int done = 0;
+                while (done < nBlocks) {
+                    // 读取BatchRequest头部 (类型6 + 本批块数), 随后是本批各块 [len + 数据]
+                    readFully(is, frame, 0, 6);
+                    short reqType = getShort(frame, 0);
+                    int count = getInt(frame, 2);
+                    if (reqType != 6 || count <= 0 || count > batch || count > nBlocks - done) {
+                        System.err.println("无效的批量请求: 类型 " + reqType + ", 块数 " + count);
+                        metrics.error();
+                        return;
+                    }
+                    // 发送BatchAnswer头部 (类型7 + 本批块数), 各块应答 [len + 反转数据] 紧随其后
+                    putShort(frame, 0, (short) 7);
+                    os.write(frame, 0, 6);
+                    metrics.bytesIn(6);
+                    metrics.bytesOut(6);
+                    for (int i = 0; i < count; i++) {
+                        readFully(is, frame, 0, 4);
+                        int blocklen = getInt(frame, 0);
+                        if (blocklen < 0 || blocklen > MAX_BLOCK) {
+                            System.err.println("无效的块长度: " + blocklen);
+                            metrics.error();
+                            return;
+                        }
+                        if (isLarge(blocklen)) {
+                            os.write(frame, 0, 4);
+                            frame = reverseLargeBlock(is, os, frame, blocklen);
+                        } else {
+                            // 预算不足时在此等待, 不再读取该连接
+                            int permits = admission.acquireBytes(blocklen);
+                            try {
+                                frame = ensureFrame(frame, 4 + blocklen);
+                                readFully(is, frame, 4, blocklen);
+                                long t0 = System.nanoTime();
+                                reverse(frame, 4, 4 + blocklen);
+                                os.write(frame, 0, 4 + blocklen);
+                                metrics.block(System.nanoTime() - t0);
+                            } finally {
+                                admission.releaseBytes(permits);
+                            }
+                        }
+                        metrics.bytesIn(4 + blocklen);
+                        metrics.bytesOut(4 + blocklen);
+                        done++;
+                        if (logEvery > 0 && done % logEvery == 0) {
+                            System.out.printf("处理块 %d/%d (长度: %d)\n", done, nBlocks, blocklen);
+                        }
+                    }
+                    os.flush();
+                }
+                return;
+            }
 
             for (int i = 0; i < nBlocks; i++) {
                 // 读取ReverseRequest头部 (类型3 + len)
-                byte[] typeByte = readBytes(is, 2);
-                short reqType = ByteBuffer.wrap(typeByte).getShort();
-                byte[] lenByte = readBytes(is, 4);
-                int blocklen = ByteBuffer.wrap(lenByte).getInt();
-                // 读取数据块
-                byte[] blockdata = readBytes(is, blocklen);
-                String blockdataStr = new String(blockdata);
-                // 反转数据
-                String reversed = new StringBuilder(new String(blockdata)).reverse().toString();
-                // 发送ReverseAnswer (类型4 + 长度 + 数据)
-                ByteBuffer answerBuf = ByteBuffer.allocate(2 + 4 + reversed.length());
-                answerBuf.putShort((short) 4); // Type 4
-                answerBuf.putInt(reversed.length());
-                answerBuf.put(reversed.getBytes());
-                os.write(answerBuf.array());
-                os.flush();
+                readFully(is, frame, 0, 6);
+                short reqType = getShort(frame, 0);
+                int blocklen = getInt(frame, 2);
+                if (reqType != 3 || blocklen < 0 || blocklen > MAX_BLOCK) {
+                    System.err.println("无效的请求: 类型 " + reqType + ", 长度 " + blocklen);
+                    metrics.error();
+                    return;
+                }
+                if (isLarge(blocklen)) {
+                    // 大块: 先发应答头部, 数据经临时文件反转后流式发送
+                    putShort(frame, 0, (short) 4);
+                    os.write(frame, 0, 6);
+                    frame = reverseLargeBlock(is, os, frame, blocklen);
+                } else {
+                    // 预算不足时在此等待, 不再读取该连接
+                    int permits = admission.acquireBytes(blocklen);
+                    try {
+                        frame = ensureFrame(frame, 6 + blocklen);
+                        // 读取数据块并原地反转
+                        readFully(is, frame, 6, blocklen);
+                        long t0 = System.nanoTime();
+                        reverse(frame, 6, 6 + blocklen);
+                        // 发送ReverseAnswer (类型4 + 长度 + 数据), 长度字段保持不变
+                        putShort(frame, 0, (short) 4);
+                        os.write(frame, 0, 6 + blocklen);
+                        metrics.block(System.nanoTime() - t0);
+                    } finally {
+                        admission.releaseBytes(permits);
+                    }
+                }
+                metrics.bytesIn(6 + blocklen);
+                metrics.bytesOut(6 + blocklen);
+                // 客户端流水线发送时, 已到达的后续请求处理完再一起flush
+                if (is.available() == 0) {
+                    os.flush();
+                }
 
-                System.out.printf("处理块 %d/%d (长度: %d)\n", i + 1, nBlocks, blockdata.length);
+                if (logEvery > 0 && (i + 1) % logEvery == 0) {
+                    System.out.printf("处理块 %d/%d (长度: %d)\n", i + 1, nBlocks, blocklen);
+                }
             }
+            os.flush();
+        } catch (SocketTimeoutException e) {
+            metrics.timedOut();
+            System.err.println("客户端读超时, 已断开: " + socket.getRemoteSocketAddress());
         } catch (IOException e) {
-            System.err.println("客户端处理错误: " + e.getMessage());
+            if (watched != null && watched.stalled) {
+                metrics.timedOut();
+                System.err.println("客户端写超时, 已断开: " + socket.getRemoteSocketAddress());
+            } else {
+                metrics.error();
+                System.err.println("客户端处理错误: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // 服务器关闭
         } finally {
+            if (waiting) {
+                admission.leaveQueue(); // 读到Initialization之前就已断开
+            }
+            if (admitted) {
+                admission.release();
+            }
+            if (watched != null) {
+                writers.remove(watched);
+            }
+            metrics.connectionClosed();
             try {
                 socket.close();
             } catch (IOException e) {
@@ -79,23 +437,183 @@ public class Reversetcpserver {
         }
     }
 
-    private byte[] readBytes(InputStream is, int n) throws IOException {
-        byte[] data = new byte[n];
+    // 帧缓冲容量不足时按倍数扩容, 保留已读入的头部
+    static byte[] ensureFrame(byte[] frame, int needed) {
+        if (needed <= frame.length) {
+            return frame;
+        }
+        return Arrays.copyOf(frame, (int) Math.min(MAX_FRAME, Math.max(needed, frame.length * 2L)));
+    }
+
+    private boolean isLarge(int blocklen) {
+        long threshold = largeBlockThreshold;
+        return threshold > 0 && blocklen > threshold;
+    }
+
+    // 大块模式: 数据边到达边写入临时文件, 再从文件尾部起按frame大小倒序读出, 每段原地反转后直接写回.
+    // 文件只写一遍读一遍, 全程只做有界的定位读写, 不映射文件, 关闭通道即删除;
+    // 堆上只用到连接自身的frame(至少扩到SPILL_CHUNK). 返回可能扩容后的frame
+    private byte[] reverseLargeBlock(InputStream is, OutputStream os, byte[] frame, int blocklen) throws IOException {
+        if (frame.length < SPILL_CHUNK) {
+            frame = new byte[SPILL_CHUNK];
+        }
+        try (FileChannel ch = openSpill()) {
+            for (int pos = 0; pos < blocklen; ) {
+                int n = is.read(frame, 0, Math.min(frame.length, blocklen - pos));
+                if (n < 0) {
+                    throw new EOFException("连接已关闭");
+                }
+                writeFully(ch, ByteBuffer.wrap(frame, 0, n), pos);
+                pos += n;
+            }
+
+            long nanos = 0;
+            for (int end = blocklen; end > 0; ) {
+                long t0 = System.nanoTime();
+                int n = Math.min(frame.length, end);
+                end -= n;
+                readFully(ch, ByteBuffer.wrap(frame, 0, n), end);
+                reverse(frame, 0, n);
+                nanos += System.nanoTime() - t0;
+                os.write(frame, 0, n);
+            }
+            metrics.block(nanos);
+        }
+        return frame;
+    }
+
+    // 在java.io.tmpdir下新建大块的溢出文件, 通道关闭时删除
+    static FileChannel openSpill() throws IOException {
+        Path spill = Files.createTempFile("reverse-", ".blk");
+        return FileChannel.open(spill, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += ch.write(buf, position);
+        }
+    }
+
+    static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position);
+            if (n < 0) {
+                throw new EOFException("溢出文件被截短");
+            }
+            position += n;
+        }
+    }
+
+    private static void readFully(InputStream is, byte[] buf, int off, int n) throws IOException {
         int bytesRead = 0;
         while (bytesRead < n) {
-            int count = is.read(data, bytesRead, n - bytesRead);
+            int count = is.read(buf, off + bytesRead, n - bytesRead);
+            if (count < 0) {
+                throw new EOFException("连接已关闭");
+            }
             bytesRead += count;
         }
-        return data;
+    }
+
+    // 反转 buf[from, to) 中的字节
+    static void reverse(byte[] buf, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    static short getShort(byte[] b, int off) {
+        return (short) ((b[off] << 8) | (b[off + 1] & 0xFF));
+    }
+
+    static int getInt(byte[] b, int off) {
+        return (b[off] << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    static void putShort(byte[] b, int off, short v) {
+        b[off] = (byte) (v >>> 8);
+        b[off + 1] = (byte) v;
+    }
+
+    static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
     }
 
     public static void main(String[] args) {
+        // 输入: 端口 [nio|cached|fixed|virtual] [线程池大小] [log=N] [stats=秒] [large=MB]
+        //       [maxconns=N] [queue=N] [queuewait=毫秒] [inflight=MB] [readtimeout=毫秒] [writetimeout=毫秒], 默认cached;
+        // log=N 每N块打印一次处理日志 (0不打印, 默认1), stats=秒 定期打印汇总行,
+        // large=MB 超过此大小的块改用临时文件反转 (默认64, 0关闭),
+        // maxconns/queue/queuewait 同时处理的连接数上限及满额时的排队长度和等待时间, 超出则回复Busy,
+        // inflight=MB 所有连接正在处理的块的字节总量上限 (这三项限制默认不限),
+        // readtimeout/writetimeout 读写停滞超过该时间即断开 (默认60000); 各项为0表示不限
         Scanner scanner = new Scanner(System.in);
-        int port = scanner.nextInt();
+        String[] message = scanner.nextLine().trim().split("( +)");
+        int port = Integer.parseInt(message[0]);
+        String mode = "CACHED";
+        int poolSize = 0;
+        int logEvery = 1;
+        int statsInterval = 0;
+        long largeMb = DEFAULT_LARGE_BLOCK_MB;
+        int maxConnections = 0;
+        int maxQueue = 0;
+        long queueWait = 0;
+        long inflightMb = 0;
+        int readTimeout = DEFAULT_TIMEOUT_MS;
+        int writeTimeout = DEFAULT_TIMEOUT_MS;
+        int positional = 0;
+        for (int i = 1; i < message.length; i++) {
+            if (message[i].startsWith("log=")) {
+                logEvery = Integer.parseInt(message[i].substring(4));
+            } else if (message[i].startsWith("stats=")) {
+                statsInterval = Integer.parseInt(message[i].substring(6));
+            } else if (message[i].startsWith("large=")) {
+                largeMb = Long.parseLong(message[i].substring(6));
+            } else if (message[i].startsWith("maxconns=")) {
+                maxConnections = Integer.parseInt(message[i].substring(9));
+            } else if (message[i].startsWith("queue=")) {
+                maxQueue = Integer.parseInt(message[i].substring(6));
+            } else if (message[i].startsWith("queuewait=")) {
+                queueWait = Long.parseLong(message[i].substring(10));
+            } else if (message[i].startsWith("inflight=")) {
+                inflightMb = Long.parseLong(message[i].substring(9));
+            } else if (message[i].startsWith("readtimeout=")) {
+                readTimeout = Integer.parseInt(message[i].substring(12));
+            } else if (message[i].startsWith("writetimeout=")) {
+                writeTimeout = Integer.parseInt(message[i].substring(13));
+            } else if (positional++ == 0) {
+                mode = message[i].toUpperCase();
+            } else {
+                poolSize = Integer.parseInt(message[i]);
+            }
+        }
+        Reverseadmission admission = new Reverseadmission(maxConnections, maxQueue, queueWait, inflightMb << 20);
         try {
-            new Reversetcpserver(port).start();
+            if (mode.equals("NIO")) {
+                Reversenioserver server = new Reversenioserver(port);
+                server.setLogEvery(logEvery);
+                server.setStatsInterval(statsInterval);
+                server.setLargeBlockThreshold(largeMb << 20);
+                server.setAdmission(admission);
+                server.setTimeouts(readTimeout, writeTimeout);
+                server.start();
+            } else {
+                Reversetcpserver server = new Reversetcpserver(port, ExecutorMode.valueOf(mode), poolSize);
+                server.setLogEvery(logEvery);
+                server.setStatsInterval(statsInterval);
+                server.setLargeBlockThreshold(largeMb << 20);
+                server.setAdmission(admission);
+                server.setTimeouts(readTimeout, writeTimeout);
+                server.start();
+            }
         } catch (IOException e) {
             System.err.println("服务器启动失败: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}